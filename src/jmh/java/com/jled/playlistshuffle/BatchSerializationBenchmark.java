@@ -0,0 +1,59 @@
+package com.jled.playlistshuffle;
+
+import com.google.gson.Gson;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Building and rendering the request body of every 100-track write batch, as the lazy shuffled
+ * list view hands them out, against the Gson.toJsonTree mapping that was used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchSerializationBenchmark {
+
+  private static final int BATCH = 100;
+
+  @Param({"10000", "100000"})
+  public int size;
+
+  private List<String> tracks;
+  private final Gson gson = new Gson();
+
+  @Setup
+  public void setUp() {
+    tracks = BenchmarkData.trackIdSet(size, 1).asList();
+  }
+
+  @Benchmark
+  public void toJsonArray(Blackhole blackhole) {
+    for (int i = 0; i < tracks.size(); i += BATCH) {
+      List<String> batch = tracks.subList(i, Math.min(i + BATCH, tracks.size()));
+      blackhole.consume(SpotifyJson.toJsonArray(batch).toString());
+    }
+  }
+
+  @Benchmark
+  public void gsonToJsonTree(Blackhole blackhole) {
+    for (int i = 0; i < tracks.size(); i += BATCH) {
+      List<String> batch = tracks.subList(i, Math.min(i + BATCH, tracks.size()));
+      blackhole.consume(gson.toJsonTree(batch).getAsJsonArray().toString());
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.jled.playlistshuffle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic inputs shared by the benchmarks.
+ */
+final class BenchmarkData {
+
+  private BenchmarkData() {
+  }
+
+  // Track URIs where roughly duplicateRate of them repeat an earlier one, like overlapping sources
+  static List<String> trackUris(int count, double duplicateRate, long seed) {
+    Random random = new Random(seed);
+    List<String> uris = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      if (i > 0 && random.nextDouble() < duplicateRate) {
+        uris.add(uris.get(random.nextInt(i)));
+      } else {
+        uris.add("spotify:track:" + SpotifyIds.encode(random.nextLong() >>> 1, random.nextLong()));
+      }
+    }
+    return uris;
+  }
+
+  static TrackIdSet trackIdSet(int count, long seed) {
+    TrackIdSet set = new TrackIdSet(count);
+    set.addAll(trackUris(count, 0, seed));
+    return set;
+  }
+}
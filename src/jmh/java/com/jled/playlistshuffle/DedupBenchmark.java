@@ -0,0 +1,60 @@
+package com.jled.playlistshuffle;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Deduplicating collected URIs into the shuffle set, against the LinkedHashSet it replaced.
+ * Sources are added in 100-URI slices, the size of a playlist page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DedupBenchmark {
+
+  private static final int SLICE = 100;
+
+  @Param({"10000", "100000", "1000000"})
+  public int size;
+
+  private List<String> uris;
+
+  @Setup
+  public void setUp() {
+    uris = BenchmarkData.trackUris(size, 0.2, 1);
+  }
+
+  @Benchmark
+  public int trackIdSet() {
+    TrackIdSet set = new TrackIdSet();
+    for (int i = 0; i < uris.size(); i += SLICE) {
+      set.addAll(uris.subList(i, Math.min(i + SLICE, uris.size())));
+    }
+    return set.size();
+  }
+
+  @Benchmark
+  public int linkedHashSet() {
+    Set<String> set = new LinkedHashSet<>();
+    for (int i = 0; i < uris.size(); i += SLICE) {
+      set.addAll(uris.subList(i, Math.min(i + SLICE, uris.size())));
+    }
+    return set.size();
+  }
+}
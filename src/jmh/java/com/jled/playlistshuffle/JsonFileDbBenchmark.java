@@ -0,0 +1,74 @@
+package com.jled.playlistshuffle;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading data.json from disk and writing it back, with a config of thousands of playlists and a
+ * quarter as many artists. Works on data.json in the working directory, which the jmh task points
+ * at build/jmh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonFileDbBenchmark {
+
+  @Param({"1000", "10000"})
+  public int resources;
+
+  private List<Playlist> playlists;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    List<String> ids = BenchmarkData.trackUris(resources * 5 / 4, 0, 1);
+    playlists = new ArrayList<>();
+    List<Artist> artists = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i++) {
+      String id = ids.get(i).substring(ids.get(i).lastIndexOf(':') + 1);
+      if (i < resources) {
+        Playlist playlist = new Playlist();
+        playlist.setId(id);
+        playlist.setName("Playlist " + i);
+        playlist.setIncludeInShuffle(i % 2 == 0);
+        playlists.add(playlist);
+      } else {
+        Artist artist = new Artist();
+        artist.setId(id);
+        artist.setName("Artist " + i);
+        artists.add(artist);
+      }
+    }
+    JsonFileDb.savePlaylists(playlists);
+    JsonFileDb.saveArtists(artists);
+    JsonFileDb.flush();
+  }
+
+  @Benchmark
+  public Config load() throws IOException {
+    JsonFileDb.reset();
+    return JsonFileDb.load();
+  }
+
+  @Benchmark
+  public void save() throws IOException {
+    JsonFileDb.savePlaylists(playlists);
+    JsonFileDb.flush();
+  }
+}
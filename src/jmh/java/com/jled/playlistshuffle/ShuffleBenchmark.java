@@ -0,0 +1,71 @@
+package com.jled.playlistshuffle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The in-place shuffle of the track set (including its index rebuild), against copying the URIs
+ * into a list and calling Collections.shuffle as shuffleThePlaylist used to, and the artist-spread
+ * shuffle over a pool with one artist per ten tracks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShuffleBenchmark {
+
+  @Param({"10000", "100000", "1000000"})
+  public int size;
+
+  private TrackIdSet set;
+  private List<String> uris;
+  private ShuffleStrategy artistSpread;
+  private final Random random = new Random(1);
+
+  @Setup
+  public void setUp() {
+    set = BenchmarkData.trackIdSet(size, 1);
+    uris = new ArrayList<>(set.asList());
+    ArtistIndex artists = new ArtistIndex();
+    Random artistRandom = new Random(2);
+    for (String uri : uris) {
+      artists.put(uri, "artist" + artistRandom.nextInt(Math.max(1, size / 10)));
+    }
+    artistSpread = new ArtistSpreadShuffle(artists);
+  }
+
+  @Benchmark
+  public TrackIdSet trackIdSetInPlace() {
+    set.shuffle(random);
+    return set;
+  }
+
+  @Benchmark
+  public TrackIdSet artistSpread() {
+    artistSpread.shuffle(set, random);
+    return set;
+  }
+
+  @Benchmark
+  public List<String> copyAndCollectionsShuffle() {
+    List<String> copy = new ArrayList<>(uris);
+    Collections.shuffle(copy, random);
+    return copy;
+  }
+}
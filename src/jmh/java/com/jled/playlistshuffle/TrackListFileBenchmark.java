@@ -0,0 +1,64 @@
+package com.jled.playlistshuffle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Saving the shuffled list to disk and reading it back, the read decoding every URI the way a
+ * resumed write does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackListFileBenchmark {
+
+  @Param({"10000", "100000", "1000000"})
+  public int size;
+
+  private TrackIdSet set;
+  private Path path;
+
+  @Setup
+  public void setUp() throws IOException {
+    set = BenchmarkData.trackIdSet(size, 1);
+    path = Files.createTempFile("shuffle_playlist", ".bin");
+    TrackListFile.write(path, set);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(path);
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+    TrackListFile.write(path, set);
+  }
+
+  @Benchmark
+  public void read(Blackhole blackhole) throws IOException {
+    List<String> tracks = TrackListFile.read(path);
+    for (int i = 0; i < tracks.size(); i++) {
+      blackhole.consume(tracks.get(i));
+    }
+  }
+}
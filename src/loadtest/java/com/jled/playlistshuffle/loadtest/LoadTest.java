@@ -0,0 +1,189 @@
+package com.jled.playlistshuffle.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jled.playlistshuffle.Artist;
+import com.jled.playlistshuffle.BatchConfig;
+import com.jled.playlistshuffle.Config;
+import com.jled.playlistshuffle.Main;
+import com.jled.playlistshuffle.Playlist;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the whole shuffle against {@link SpotifyStub} and reports wall time, request count and peak
+ * heap.
+ *
+ * <p>The shuffler keeps its state in files relative to the working directory, so this writes a
+ * fresh .env, data.json (every synthetic playlist and artist already opted in, so nothing prompts)
+ * and token file there first. Run it through {@code ./gradlew loadtest}, which uses
+ * build/loadtest as the working directory. Arguments are key=value overrides of the defaults below,
+ * e.g. {@code -PloadtestArgs="playlists=200 rateLimitRate=0.02"}; {@code warm=true} keeps the
+ * caches from the previous run.
+ *
+ * <p>{@code scenario=shared-failure} runs two batch accounts that follow the same playlists and
+ * artists, one of which fails while collecting. The run passes only if the other account still
+ * writes its shuffle, i.e. the failing account's cancelled reads were not handed to it.
+ */
+public class LoadTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadTest.class);
+
+  private static final List<String> STATE_FILES = List.of("playlist_cache.json",
+      "album_cache.json", "shuffle_journal.log", "shuffle_playlist.bin", "shuffle_shards.json");
+
+  private static final Path BATCH_FILE = Path.of("accounts.json");
+  private static final String FAILING_TOKEN = "loadtest-failing";
+  // Batch account names, which prefix their state files
+  private static final List<String> ACCOUNTS = List.of("healthy", "failing");
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> overrides = new HashMap<>();
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      if (eq > 0) {
+        overrides.put(arg.substring(0, eq), arg.substring(eq + 1));
+      }
+    }
+
+    boolean sharedFailure = overrides.getOrDefault("scenario", "single").equals("shared-failure");
+    SpotifyStub.Options options = new SpotifyStub.Options(
+        intOption(overrides, "playlists", 40),
+        intOption(overrides, "playlistSize", 250),
+        intOption(overrides, "likedSongs", 3_000),
+        intOption(overrides, "artists", 15),
+        intOption(overrides, "albumsPerArtist", 12),
+        intOption(overrides, "tracksPerAlbum", 12),
+        intOption(overrides, "savedAlbums", 40),
+        intOption(overrides, "trackPool", 20_000),
+        intOption(overrides, "shuffleSize", 5_000),
+        intOption(overrides, "latencyMillis", 30),
+        intOption(overrides, "jitterMillis", 40),
+        Double.parseDouble(overrides.getOrDefault("rateLimitRate", "0.005")),
+        intOption(overrides, "retryAfterSeconds", 1),
+        intOption(overrides, "seed", 42),
+        sharedFailure ? FAILING_TOKEN : null);
+    boolean warm = Boolean.parseBoolean(overrides.getOrDefault("warm", "false"));
+
+    try (SpotifyStub stub = new SpotifyStub(options)) {
+      prepareWorkingDirectory(stub, warm, sharedFailure);
+      LOG.info("Stub listening on port {} with {}", stub.getPort(), options);
+
+      List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+          .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+      heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+      long start = System.nanoTime();
+
+      if (sharedFailure) {
+        runSharedFailure(stub);
+      } else {
+        Main.main(new String[0]);
+      }
+
+      long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      // Sum of the per-pool peaks, an upper bound on the heap in use at any one moment
+      long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+      LOG.info("Wall time: {} ms", wallMillis);
+      LOG.info("Requests: {} ({} answered with 429)", stub.getRequests(), stub.getRateLimited());
+      LOG.info("Peak heap: {} MiB", peakHeap / (1024 * 1024));
+      LOG.info("Shuffle playlist size: {}", stub.getShuffleSize());
+      LOG.info("Per-endpoint details: run_report.json");
+    }
+    // The Spotify client's connection pool is not daemon, don't wait for it to idle out
+    System.exit(0);
+  }
+
+  private static void runSharedFailure(SpotifyStub stub) throws Exception {
+    boolean failingAccountFailed = false;
+    try {
+      Main.main(new String[] {"--batch", BATCH_FILE.toString()});
+    } catch (IllegalStateException e) {
+      if (!e.getMessage().startsWith("1 of 2 accounts failed")) {
+        throw e;
+      }
+      failingAccountFailed = true;
+    }
+    if (!failingAccountFailed) {
+      throw new IllegalStateException("The failing account finished its shuffle");
+    }
+    if (stub.getShuffleWrites() == 0) {
+      throw new IllegalStateException("The healthy account failed along with the failing one");
+    }
+    LOG.info("Only the failing account failed, the healthy one wrote its shuffle");
+  }
+
+  private static void prepareWorkingDirectory(SpotifyStub stub, boolean warm,
+      boolean sharedFailure) throws Exception {
+    Files.writeString(Path.of(".env"), String.join("\n",
+        "SPOTIFY_CLIENT=loadtest",
+        "SPOTIFY_SECRET=loadtest",
+        "SHUFFLE_PLAYLIST=" + stub.getShufflePlaylistId(),
+        "SPOTIFY_API_SCHEME=http",
+        "SPOTIFY_API_HOST=127.0.0.1",
+        "SPOTIFY_API_PORT=" + stub.getPort(),
+        ""));
+    // Far-off expiry, the stub has no token endpoint to refresh against
+    long expiresAt = Instant.now().plus(Duration.ofDays(1)).getEpochSecond();
+    Files.writeString(Path.of("spotify_tokens"),
+        "loadtest-access\nloadtest-refresh\n" + expiresAt + "\n");
+
+    Config config = new Config();
+    for (String id : stub.getPlaylistIds()) {
+      Playlist playlist = new Playlist();
+      playlist.setId(id);
+      playlist.setName(id);
+      playlist.setIncludeInShuffle(true);
+      config.getPlaylists().add(playlist);
+    }
+    for (String id : stub.getArtistIds()) {
+      Artist artist = new Artist();
+      artist.setId(id);
+      artist.setName(id);
+      artist.setIncludeInShuffle(true);
+      config.getArtists().add(artist);
+    }
+    new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(Path.of("data.json").toFile(),
+        config);
+
+    if (sharedFailure) {
+      // Both write to the one writable playlist; the failing account never gets that far
+      BatchConfig batch = new BatchConfig();
+      for (String name : ACCOUNTS) {
+        String accessToken = name.equals("failing") ? FAILING_TOKEN : "loadtest-access";
+        Files.writeString(Path.of(name + "_spotify_tokens"),
+            accessToken + "\nloadtest-refresh\n" + expiresAt + "\n");
+        BatchConfig.Account account = new BatchConfig.Account();
+        account.setName(name);
+        account.setShufflePlaylist(stub.getShufflePlaylistId());
+        account.setPlaylists(config.getPlaylists());
+        account.setArtists(config.getArtists());
+        batch.getAccounts().add(account);
+      }
+      new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(BATCH_FILE.toFile(), batch);
+    }
+
+    if (!warm) {
+      for (String file : STATE_FILES) {
+        Files.deleteIfExists(Path.of(file));
+        for (String name : ACCOUNTS) {
+          Files.deleteIfExists(Path.of(name + "_" + file));
+        }
+      }
+    }
+  }
+
+  private static int intOption(Map<String, String> overrides, String name, int defaultValue) {
+    return Integer.parseInt(overrides.getOrDefault(name, String.valueOf(defaultValue)));
+  }
+}
@@ -0,0 +1,502 @@
+package com.jled.playlistshuffle.loadtest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.jled.playlistshuffle.SpotifyIds;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the parts of the Spotify Web API the shuffler uses, serving a synthetic
+ * library generated from a seed. Every response is delayed by a base latency plus random jitter,
+ * and a configurable share of requests is answered with 429 and a Retry-After. Liked songs read
+ * with the failing token, if one is set, are refused with 403 straight away, so that account fails
+ * while its other reads are still in flight.
+ *
+ * <p>Only the shuffle playlist is writable; adds, replaces and positional removals are applied to
+ * it so the shuffler's own read-back checks see a consistent playlist.
+ */
+public class SpotifyStub implements AutoCloseable {
+
+  private static final int KIND_TRACK = 1;
+  private static final int KIND_PLAYLIST = 2;
+  private static final int KIND_ARTIST = 3;
+  private static final int KIND_ALBUM = 4;
+  private static final int KIND_SHUFFLE = 5;
+
+  private static final Pattern PLAYLIST = Pattern.compile("/v1/playlists/(\\w{22})");
+  private static final Pattern PLAYLIST_ITEMS = Pattern.compile(
+      "/v1/playlists/(\\w{22})/(?:tracks|items)");
+  private static final Pattern PLAYLIST_IMAGES = Pattern.compile("/v1/playlists/(\\w{22})/images");
+  private static final Pattern ARTIST_ALBUMS = Pattern.compile("/v1/artists/(\\w{22})/albums");
+  private static final Pattern ALBUM_TRACKS = Pattern.compile("/v1/albums/(\\w{22})/tracks");
+
+  // Sizes of the synthetic library and the injected faults
+  public record Options(int playlists, int playlistSize, int likedSongs, int artists,
+      int albumsPerArtist, int tracksPerAlbum, int savedAlbums, int trackPool, int shuffleSize,
+      long latencyMillis, long jitterMillis, double rateLimitRate, int retryAfterSeconds,
+      long seed, String failingToken) {
+
+  }
+
+  private final Options options;
+  private final HttpServer server;
+  private final int[][] playlistTracks;
+  private final int[] likedTracks;
+  private final List<Integer> shuffleTracks = new ArrayList<>();
+  private final Map<String, Integer> indexById = new HashMap<>();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong rateLimited = new AtomicLong();
+  private int shuffleSnapshot;
+
+  public SpotifyStub(Options options) throws IOException {
+    this.options = options;
+    Random random = new Random(options.seed());
+    playlistTracks = new int[options.playlists()][];
+    for (int p = 0; p < options.playlists(); p++) {
+      playlistTracks[p] = random.ints(options.playlistSize(), 0, options.trackPool()).toArray();
+      indexById.put(id(KIND_PLAYLIST, p), p);
+    }
+    likedTracks = random.ints(options.likedSongs(), 0, options.trackPool()).toArray();
+    random.ints(options.shuffleSize(), 0, options.trackPool()).forEach(shuffleTracks::add);
+    for (int a = 0; a < options.artists(); a++) {
+      indexById.put(id(KIND_ARTIST, a), a);
+    }
+    for (int album = 0; album < albumCount(); album++) {
+      indexById.put(id(KIND_ALBUM, album), album);
+    }
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", this::handle);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  public String getShufflePlaylistId() {
+    return id(KIND_SHUFFLE, 0);
+  }
+
+  public List<String> getPlaylistIds() {
+    List<String> ids = new ArrayList<>();
+    for (int p = 0; p < options.playlists(); p++) {
+      ids.add(id(KIND_PLAYLIST, p));
+    }
+    return ids;
+  }
+
+  public List<String> getArtistIds() {
+    List<String> ids = new ArrayList<>();
+    for (int a = 0; a < options.artists(); a++) {
+      ids.add(id(KIND_ARTIST, a));
+    }
+    return ids;
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getRateLimited() {
+    return rateLimited.get();
+  }
+
+  public synchronized int getShuffleSize() {
+    return shuffleTracks.size();
+  }
+
+  public synchronized int getShuffleWrites() {
+    return shuffleSnapshot;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    try {
+      if (isFailingAccount(exchange)
+          && exchange.getRequestURI().getPath().equals("/v1/me/tracks")) {
+        respond(exchange, 403, error(403, "Forbidden"));
+        return;
+      }
+
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      long delay = options.latencyMillis()
+          + (options.jitterMillis() > 0 ? random.nextLong(options.jitterMillis() + 1) : 0);
+      Thread.sleep(delay);
+
+      if (random.nextDouble() < options.rateLimitRate()) {
+        rateLimited.incrementAndGet();
+        exchange.getResponseHeaders().add("Retry-After",
+            String.valueOf(options.retryAfterSeconds()));
+        respond(exchange, 429, error(429, "API rate limit exceeded"));
+        return;
+      }
+
+      JsonElement body = route(exchange);
+      if (body == null) {
+        respond(exchange, 404, error(404, "Not found"));
+      } else {
+        respond(exchange, exchange.getRequestMethod().equals("POST") ? 201 : 200, body);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      respond(exchange, 500, error(500, String.valueOf(e.getMessage())));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private boolean isFailingAccount(HttpExchange exchange) {
+    return options.failingToken() != null && ("Bearer " + options.failingToken())
+        .equals(exchange.getRequestHeaders().getFirst("Authorization"));
+  }
+
+  private JsonElement route(HttpExchange exchange) throws IOException {
+    String method = exchange.getRequestMethod();
+    String path = exchange.getRequestURI().getPath();
+    Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+    int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+    int limit = Integer.parseInt(query.getOrDefault("limit", "20"));
+    Matcher matcher;
+
+    if (method.equals("GET")) {
+      switch (path) {
+        case "/v1/me" -> {
+          JsonObject user = new JsonObject();
+          user.addProperty("id", "loadtest");
+          user.addProperty("display_name", "Load Test");
+          return user;
+        }
+        case "/v1/me/playlists" -> {
+          // The shuffle playlist comes last, like any other playlist the user owns
+          return page(path, options.playlists() + 1, offset, limit, this::playlistSummary);
+        }
+        case "/v1/me/tracks" -> {
+          return page(path, likedTracks.length, offset, limit, i -> item(likedTracks[i]));
+        }
+        case "/v1/me/albums" -> {
+          return page(path, Math.min(options.savedAlbums(), albumCount()), offset, limit, i -> {
+            JsonObject saved = new JsonObject();
+            saved.add("album", album(i));
+            return saved;
+          });
+        }
+        case "/v1/me/following" -> {
+          return followedArtists(query.get("after"), limit);
+        }
+        case "/v1/albums" -> {
+          JsonArray albums = new JsonArray();
+          for (String id : query.get("ids").split(",")) {
+            Integer album = indexById.get(id);
+            albums.add(album == null ? JsonNull.INSTANCE : album(album));
+          }
+          JsonObject result = new JsonObject();
+          result.add("albums", albums);
+          return result;
+        }
+        case "/v1/tracks" -> {
+          JsonArray tracks = new JsonArray();
+          for (String id : query.get("ids").split(",")) {
+            JsonObject track = new JsonObject();
+            track.addProperty("id", id);
+            track.addProperty("popularity", Math.floorMod(id.hashCode(), 101));
+            tracks.add(track);
+          }
+          JsonObject result = new JsonObject();
+          result.add("tracks", tracks);
+          return result;
+        }
+        default -> {
+        }
+      }
+      if ((matcher = PLAYLIST_ITEMS.matcher(path)).matches()) {
+        return playlistItems(matcher.group(1), offset, limit);
+      }
+      if ((matcher = PLAYLIST.matcher(path)).matches()) {
+        JsonObject playlist = new JsonObject();
+        synchronized (this) {
+          playlist.addProperty("snapshot_id", snapshotId(matcher.group(1)));
+        }
+        playlist.add("tracks", playlistItems(matcher.group(1), 0, 100));
+        return playlist;
+      }
+      if ((matcher = ARTIST_ALBUMS.matcher(path)).matches()) {
+        int artist = indexById.get(matcher.group(1));
+        return page(path, options.albumsPerArtist(), offset, limit, i -> {
+          JsonObject album = new JsonObject();
+          album.addProperty("id", id(KIND_ALBUM, artist * options.albumsPerArtist() + i));
+          return album;
+        });
+      }
+      if ((matcher = ALBUM_TRACKS.matcher(path)).matches()) {
+        int album = indexById.get(matcher.group(1));
+        return albumTracks(path, album, offset, limit);
+      }
+      return null;
+    }
+
+    if ((matcher = PLAYLIST_IMAGES.matcher(path)).matches() && method.equals("PUT")) {
+      return new JsonObject();
+    }
+    if ((matcher = PLAYLIST_ITEMS.matcher(path)).matches()
+        && matcher.group(1).equals(getShufflePlaylistId())) {
+      JsonObject request = readBody(exchange);
+      return writeShuffle(method, request, query);
+    }
+    return null;
+  }
+
+  private synchronized JsonElement writeShuffle(String method, JsonObject request,
+      Map<String, String> query) {
+    switch (method) {
+      case "POST" -> {
+        List<Integer> added = uris(request != null && request.has("uris")
+            ? request.getAsJsonArray("uris") : uriArray(query.get("uris")));
+        if (request != null && request.has("position")) {
+          shuffleTracks.addAll(request.get("position").getAsInt(), added);
+        } else {
+          shuffleTracks.addAll(added);
+        }
+      }
+      case "PUT" -> {
+        List<Integer> replaced = uris(request != null && request.has("uris")
+            ? request.getAsJsonArray("uris") : uriArray(query.get("uris")));
+        shuffleTracks.clear();
+        shuffleTracks.addAll(replaced);
+      }
+      case "DELETE" -> {
+        List<Integer> positions = new ArrayList<>();
+        for (JsonElement track : request.getAsJsonArray("tracks")) {
+          for (JsonElement position : track.getAsJsonObject().getAsJsonArray("positions")) {
+            positions.add(position.getAsInt());
+          }
+        }
+        positions.sort((a, b) -> Integer.compare(b, a));
+        for (int position : positions) {
+          shuffleTracks.remove(position);
+        }
+      }
+      default -> {
+        return null;
+      }
+    }
+    shuffleSnapshot++;
+    JsonObject result = new JsonObject();
+    result.addProperty("snapshot_id", snapshotId(getShufflePlaylistId()));
+    return result;
+  }
+
+  private JsonElement playlistItems(String playlistId, int offset, int limit) {
+    String path = "/v1/playlists/" + playlistId + "/tracks";
+    if (playlistId.equals(getShufflePlaylistId())) {
+      synchronized (this) {
+        List<Integer> tracks = List.copyOf(shuffleTracks);
+        return page(path, tracks.size(), offset, limit, i -> item(tracks.get(i)));
+      }
+    }
+    int[] tracks = playlistTracks[indexById.get(playlistId)];
+    return page(path, tracks.length, offset, limit, i -> item(tracks[i]));
+  }
+
+  private JsonObject playlistSummary(int index) {
+    boolean shuffle = index == options.playlists();
+    String id = shuffle ? getShufflePlaylistId() : id(KIND_PLAYLIST, index);
+    JsonObject playlist = new JsonObject();
+    playlist.addProperty("id", id);
+    playlist.addProperty("name", shuffle ? "Shuffle" : "Playlist " + index);
+    JsonObject tracks = new JsonObject();
+    synchronized (this) {
+      playlist.addProperty("snapshot_id", snapshotId(id));
+      tracks.addProperty("total", shuffle ? shuffleTracks.size() : options.playlistSize());
+    }
+    playlist.add("tracks", tracks);
+    return playlist;
+  }
+
+  // Cursor paging keyed by the id of the last artist on the previous page
+  private JsonObject followedArtists(String after, int limit) {
+    int start = after == null ? 0 : indexById.get(after) + 1;
+    int end = Math.min(start + limit, options.artists());
+    JsonArray items = new JsonArray();
+    for (int a = start; a < end; a++) {
+      JsonObject artist = new JsonObject();
+      artist.addProperty("id", id(KIND_ARTIST, a));
+      artist.addProperty("name", "Artist " + a);
+      items.add(artist);
+    }
+    JsonObject artists = new JsonObject();
+    artists.add("items", items);
+    artists.addProperty("total", options.artists());
+    boolean more = end < options.artists();
+    JsonObject cursors = new JsonObject();
+    cursors.addProperty("after", more ? id(KIND_ARTIST, end - 1) : null);
+    artists.add("cursors", cursors);
+    artists.addProperty("next", more ? "/v1/me/following?after=" + id(KIND_ARTIST, end - 1)
+        : null);
+    JsonObject result = new JsonObject();
+    result.add("artists", artists);
+    return result;
+  }
+
+  private JsonObject album(int album) {
+    JsonObject result = new JsonObject();
+    result.addProperty("id", id(KIND_ALBUM, album));
+    result.addProperty("name", "Album " + album);
+    JsonArray artists = new JsonArray();
+    JsonObject artist = new JsonObject();
+    artist.addProperty("name", "Artist " + album / Math.max(1, options.albumsPerArtist()));
+    artists.add(artist);
+    result.add("artists", artists);
+    result.add("tracks", albumTracks("/v1/albums/" + id(KIND_ALBUM, album) + "/tracks", album,
+        0, 50));
+    return result;
+  }
+
+  private JsonObject albumTracks(String path, int album, int offset, int limit) {
+    return page(path, options.tracksPerAlbum(), offset, limit, i -> {
+      JsonObject track = new JsonObject();
+      track.addProperty("id", trackId(albumTrack(album, i)));
+      return track;
+    });
+  }
+
+  // Album tracks are drawn from the same pool as playlists, so sources overlap and dedup matters
+  private int albumTrack(int album, int position) {
+    return (int) (((long) album * options.tracksPerAlbum() + position) % options.trackPool());
+  }
+
+  private int albumCount() {
+    return options.artists() * options.albumsPerArtist();
+  }
+
+  private JsonObject item(int track) {
+    JsonObject trackObject = new JsonObject();
+    trackObject.addProperty("id", trackId(track));
+    trackObject.addProperty("uri", "spotify:track:" + trackId(track));
+    JsonObject artist = new JsonObject();
+    artist.addProperty("id", id(KIND_ARTIST, track % Math.max(1, options.artists())));
+    JsonArray artists = new JsonArray();
+    artists.add(artist);
+    trackObject.add("artists", artists);
+    JsonObject item = new JsonObject();
+    item.add("track", trackObject);
+    return item;
+  }
+
+  private static JsonObject page(String path, int total, int offset, int limit,
+      IntFunction<JsonElement> item) {
+    JsonArray items = new JsonArray();
+    int end = Math.min(total, offset + limit);
+    for (int i = offset; i < end; i++) {
+      items.add(item.apply(i));
+    }
+    JsonObject page = new JsonObject();
+    page.add("items", items);
+    page.addProperty("total", total);
+    page.addProperty("limit", limit);
+    page.addProperty("offset", offset);
+    page.addProperty("next", end < total
+        ? path + "?offset=" + end + "&limit=" + limit : null);
+    return page;
+  }
+
+  private String snapshotId(String playlistId) {
+    return playlistId.equals(getShufflePlaylistId()) ? "shuffle-" + shuffleSnapshot : "static";
+  }
+
+  private List<Integer> uris(JsonArray uris) {
+    List<Integer> tracks = new ArrayList<>();
+    long[] id = new long[2];
+    for (JsonElement uri : uris) {
+      String text = uri.getAsString();
+      SpotifyIds.decode(text, text.length() - SpotifyIds.ID_LENGTH, id);
+      tracks.add((int) id[1]);
+    }
+    return tracks;
+  }
+
+  private static JsonArray uriArray(String commaSeparated) {
+    JsonArray array = new JsonArray();
+    if (commaSeparated != null) {
+      for (String uri : commaSeparated.split(",")) {
+        array.add(uri);
+      }
+    }
+    return array;
+  }
+
+  private static String trackId(int track) {
+    return id(KIND_TRACK, track);
+  }
+
+  // Valid base62 ids whose high half tells the kinds apart and whose low half is the index
+  private static String id(int kind, int index) {
+    return SpotifyIds.encode(kind, index);
+  }
+
+  private static JsonObject readBody(HttpExchange exchange) throws IOException {
+    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    return body.isBlank() ? null : JsonParser.parseString(body).getAsJsonObject();
+  }
+
+  private static Map<String, String> query(String rawQuery) {
+    Map<String, String> query = new HashMap<>();
+    if (rawQuery != null) {
+      for (String pair : rawQuery.split("&")) {
+        int eq = pair.indexOf('=');
+        if (eq > 0) {
+          query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+              URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+      }
+    }
+    return query;
+  }
+
+  private static JsonObject error(int status, String message) {
+    JsonObject error = new JsonObject();
+    error.addProperty("status", status);
+    error.addProperty("message", message);
+    JsonObject result = new JsonObject();
+    result.add("error", error);
+    return result;
+  }
+
+  private static void respond(HttpExchange exchange, int status, JsonElement body)
+      throws IOException {
+    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.jled.playlistshuffle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent cache for artist discographies. Album track lists never change, so they are kept
+ * until evicted as least recently used. An artist's album list and track popularity do change and
+ * expire after their own TTLs.
+ */
+public class AlbumCache {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private static final Duration ARTIST_ALBUMS_TTL = Duration.ofDays(1);
+  private static final Duration POPULARITY_TTL = Duration.ofHours(6);
+  private static final int MAX_ALBUMS = 20_000;
+  private static final int MAX_ARTISTS = 2_000;
+  private static final int MAX_TRACKS = 200_000;
+
+  public record ArtistEntry(long fetchedAt, List<String> albumIds) {
+
+  }
+
+  public record PopularityEntry(long fetchedAt, int popularity) {
+
+  }
+
+  // Serialized form, maps are stored least recently used first
+  public static class Data {
+
+    public Map<String, List<String>> albumTracks = new LinkedHashMap<>();
+    public Map<String, ArtistEntry> artistAlbums = new LinkedHashMap<>();
+    public Map<String, PopularityEntry> popularity = new LinkedHashMap<>();
+  }
+
+  private final Path path;
+  private final Map<String, List<String>> albumTracks = lru(MAX_ALBUMS);
+  private final Map<String, ArtistEntry> artistAlbums = lru(MAX_ARTISTS);
+  private final Map<String, PopularityEntry> popularity = lru(MAX_TRACKS);
+
+  private AlbumCache(Path path, Data data) {
+    this.path = path;
+    albumTracks.putAll(data.albumTracks);
+    artistAlbums.putAll(data.artistAlbums);
+    popularity.putAll(data.popularity);
+  }
+
+  public static AlbumCache load(String filename) throws IOException {
+    Path path = Paths.get(filename);
+    if (!Files.exists(path)) {
+      return new AlbumCache(path, new Data());
+    }
+    return new AlbumCache(path, mapper.readValue(path.toFile(), Data.class));
+  }
+
+  public synchronized List<String> getAlbumTracks(String albumId) {
+    return albumTracks.get(albumId);
+  }
+
+  public synchronized void putAlbumTracks(String albumId, List<String> trackIds) {
+    albumTracks.put(albumId, List.copyOf(trackIds));
+  }
+
+  // Returns null once the artist's album list is older than its TTL
+  public synchronized List<String> getArtistAlbums(String artistId) {
+    ArtistEntry entry = artistAlbums.get(artistId);
+    if (entry == null || isExpired(entry.fetchedAt(), ARTIST_ALBUMS_TTL)) {
+      return null;
+    }
+    return entry.albumIds();
+  }
+
+  public synchronized void putArtistAlbums(String artistId, List<String> albumIds) {
+    artistAlbums.put(artistId, new ArtistEntry(System.currentTimeMillis(), List.copyOf(albumIds)));
+  }
+
+  // Returns null once the popularity is older than its TTL
+  public synchronized Integer getPopularity(String trackId) {
+    PopularityEntry entry = popularity.get(trackId);
+    if (entry == null || isExpired(entry.fetchedAt(), POPULARITY_TTL)) {
+      return null;
+    }
+    return entry.popularity();
+  }
+
+  public synchronized void putPopularity(String trackId, int value) {
+    popularity.put(trackId, new PopularityEntry(System.currentTimeMillis(), value));
+  }
+
+  // Written to a temp file first so an interrupted save never leaves a truncated cache behind
+  public synchronized void save() throws IOException {
+    Data data = new Data();
+    data.albumTracks = albumTracks;
+    data.artistAlbums = artistAlbums;
+    data.popularity = popularity;
+    File tmp = new File(path + ".tmp");
+    mapper.writeValue(tmp, data);
+    Files.move(tmp.toPath(), path, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static boolean isExpired(long fetchedAt, Duration ttl) {
+    return System.currentTimeMillis() - fetchedAt > ttl.toMillis();
+  }
+
+  private static <V> Map<String, V> lru(int maxEntries) {
+    return new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+}
@@ -1,4 +1,24 @@
 package com.jled.playlistshuffle;
 public class Artist extends SpotifyResource{
 
+  // How many of the artist's most popular tracks go into the shuffle
+  private int topTracks = 25;
+  // Album groups searched for those tracks, as accepted by Spotify's include_groups
+  private String includeGroups = "album,single";
+
+  public int getTopTracks() {
+    return topTracks;
+  }
+
+  public void setTopTracks(int topTracks) {
+    this.topTracks = topTracks;
+  }
+
+  public String getIncludeGroups() {
+    return includeGroups;
+  }
+
+  public void setIncludeGroups(String includeGroups) {
+    this.includeGroups = includeGroups;
+  }
 }
@@ -0,0 +1,122 @@
+package com.jled.playlistshuffle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps track ids to a dense int per artist, filled from metadata the sources already return
+ * (playlist items, liked songs, albums, the artist a top-track list belongs to). Tracks are keyed by
+ * their decoded 128-bit id in an open-addressing table, the same layout as {@link TrackIdSet}.
+ */
+public class ArtistIndex {
+
+  private static final String TRACK_PREFIX = "spotify:track:";
+
+  private final Map<String, Integer> artistNumbers = new HashMap<>();
+  private long[] his = new long[1024];
+  private long[] los = new long[1024];
+  private int[] artists = new int[1024];
+  private int size;
+
+  // Open-addressing index into the dense arrays, storing position + 1 so that 0 means empty
+  private int[] slots = new int[4096];
+
+  private final long[] scratch = new long[2];
+
+  // Accepts a track URI or a bare track id; anything else, or a null artist, is ignored
+  public synchronized void put(String track, String artistId) {
+    if (artistId == null || track == null) {
+      return;
+    }
+    int offset = track.startsWith(TRACK_PREFIX) ? TRACK_PREFIX.length() : 0;
+    if (!SpotifyIds.decode(track, offset, scratch)) {
+      return;
+    }
+    int artist = artistNumbers.computeIfAbsent(artistId, id -> artistNumbers.size());
+    int index = find(scratch[0], scratch[1]);
+    if (index >= 0) {
+      artists[index] = artist;
+      return;
+    }
+    if (size == his.length) {
+      his = Arrays.copyOf(his, size * 2);
+      los = Arrays.copyOf(los, size * 2);
+      artists = Arrays.copyOf(artists, size * 2);
+    }
+    his[size] = scratch[0];
+    los[size] = scratch[1];
+    artists[size] = artist;
+    size++;
+    if (size * 2 > slots.length) {
+      slots = new int[slots.length * 2];
+      for (int i = 0; i < size; i++) {
+        insertSlot(i);
+      }
+    } else {
+      insertSlot(size - 1);
+    }
+  }
+
+  // Back to empty, releasing the grown tables
+  public synchronized void clear() {
+    artistNumbers.clear();
+    his = new long[1024];
+    los = new long[1024];
+    artists = new int[1024];
+    size = 0;
+    slots = new int[4096];
+  }
+
+  // The artist number of a track, or -1 if its artist is unknown
+  public synchronized int artistOf(long hi, long lo) {
+    int index = find(hi, lo);
+    return index < 0 ? -1 : artists[index];
+  }
+
+  // Artist number of every entry of the set, -1 where unknown, under a single lock of each
+  public int[] artistsOf(TrackIdSet tracks) {
+    synchronized (tracks) {
+      synchronized (this) {
+        int[] result = new int[tracks.size()];
+        for (int i = 0; i < result.length; i++) {
+          result[i] = tracks.isTrack(i) ? artistOf(tracks.idHigh(i), tracks.idLow(i)) : -1;
+        }
+        return result;
+      }
+    }
+  }
+
+  // Artist numbers are 0 until this, exclusive
+  public synchronized int artistCount() {
+    return artistNumbers.size();
+  }
+
+  private int find(long hi, long lo) {
+    int mask = slots.length - 1;
+    for (int slot = hash(hi, lo) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+      int index = slots[slot] - 1;
+      if (his[index] == hi && los[index] == lo) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private void insertSlot(int index) {
+    int mask = slots.length - 1;
+    int slot = hash(his[index], los[index]) & mask;
+    while (slots[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = index + 1;
+  }
+
+  private static int hash(long hi, long lo) {
+    long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+}
@@ -0,0 +1,123 @@
+package com.jled.playlistshuffle;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Spreads each artist's tracks evenly over the playlist, in the style of Spotify's dithered
+ * shuffle. An artist with k tracks gets them in random order at positions (j + offset) / k with one
+ * random offset per artist plus a little per-track jitter, so the same artist rarely comes up twice
+ * in a row. Tracks whose artist is unknown are placed uniformly at random.
+ *
+ * <p>Everything runs over primitive arrays. Grouping is a counting sort and ordering by position
+ * is a bucket sort of packed (position, index) longs, so a pass takes expected linear time.
+ */
+public class ArtistSpreadShuffle implements ShuffleStrategy {
+
+  private static final double JITTER = 0.1;
+
+  private final ArtistIndex artists;
+
+  public ArtistSpreadShuffle(ArtistIndex artists) {
+    this.artists = artists;
+  }
+
+  @Override
+  public void shuffle(TrackIdSet tracks, Random random) {
+    synchronized (tracks) {
+      int n = tracks.size();
+      if (n < 2) {
+        return;
+      }
+
+      // Tracks without a known artist each become a group of their own
+      int[] artistOf = artists.artistsOf(tracks);
+      int groups = artists.artistCount();
+      for (int i = 0; i < n; i++) {
+        if (artistOf[i] < 0) {
+          artistOf[i] = groups++;
+        }
+      }
+
+      int[] starts = new int[groups + 1];
+      for (int artist : artistOf) {
+        starts[artist + 1]++;
+      }
+      for (int g = 0; g < groups; g++) {
+        starts[g + 1] += starts[g];
+      }
+      int[] members = new int[n];
+      int[] fill = Arrays.copyOf(starts, groups);
+      for (int i = 0; i < n; i++) {
+        members[fill[artistOf[i]]++] = i;
+      }
+
+      int indexBits = 32 - Integer.numberOfLeadingZeros(n - 1);
+      double positionScale = (double) (1L << (63 - indexBits));
+      long[] keys = new long[n];
+      int[] buckets = new int[n];
+      for (int g = 0; g < groups; g++) {
+        int start = starts[g];
+        int count = starts[g + 1] - start;
+        if (count == 0) {
+          continue;
+        }
+        for (int j = count - 1; j > 0; j--) {
+          int k = random.nextInt(j + 1);
+          int member = members[start + j];
+          members[start + j] = members[start + k];
+          members[start + k] = member;
+        }
+        double offset = random.nextDouble();
+        for (int j = 0; j < count; j++) {
+          double jitter = count > 1 ? (random.nextDouble() * 2 - 1) * JITTER : 0;
+          double position = (j + offset + jitter) / count;
+          // Jitter may push the ends just outside [0, 1). Wrapping a tiny negative value can round
+          // to exactly 1.0, which would be one bucket past the end.
+          position = Math.min(position - Math.floor(position), Math.nextDown(1.0));
+          int index = members[start + j];
+          keys[index] = ((long) (position * positionScale) << indexBits) | index;
+          buckets[index] = (int) (position * n);
+        }
+      }
+
+      int[] order = new int[n];
+      long indexMask = (1L << indexBits) - 1;
+      long[] sorted = sortByPosition(keys, buckets);
+      for (int i = 0; i < n; i++) {
+        order[i] = (int) (sorted[i] & indexMask);
+      }
+      tracks.permute(order);
+    }
+  }
+
+  // Positions are spread evenly over [0, 1), so n equal-width buckets hold about one key each: a
+  // counting sort by bucket plus an insertion sort inside each bucket beats a general sort
+  private static long[] sortByPosition(long[] keys, int[] buckets) {
+    int n = keys.length;
+    int[] starts = new int[n + 1];
+    for (int bucket : buckets) {
+      starts[bucket + 1]++;
+    }
+    for (int b = 0; b < n; b++) {
+      starts[b + 1] += starts[b];
+    }
+    long[] sorted = new long[n];
+    int[] fill = Arrays.copyOf(starts, n);
+    for (int i = 0; i < n; i++) {
+      sorted[fill[buckets[i]]++] = keys[i];
+    }
+    for (int b = 0; b < n; b++) {
+      for (int i = starts[b] + 1; i < starts[b + 1]; i++) {
+        long key = sorted[i];
+        int j = i - 1;
+        while (j >= starts[b] && sorted[j] > key) {
+          sorted[j + 1] = sorted[j];
+          j--;
+        }
+        sorted[j + 1] = key;
+      }
+    }
+    return sorted;
+  }
+}
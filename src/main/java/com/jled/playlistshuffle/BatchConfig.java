@@ -0,0 +1,120 @@
+package com.jled.playlistshuffle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Accounts for --batch mode, read from a JSON file. Each entry names its token file, the playlist
+ * to write the shuffle to and the sources to collect it from; unlike data.json nothing is asked
+ * about, every listed playlist and artist is included.
+ */
+public class BatchConfig {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private List<Account> accounts = new ArrayList<>();
+
+  public static BatchConfig load(Path path) throws IOException {
+    BatchConfig config = mapper.readValue(path.toFile(), BatchConfig.class);
+    Set<String> names = new HashSet<>();
+    for (Account account : config.getAccounts()) {
+      if (account.getName() == null || account.getShufflePlaylist() == null) {
+        throw new IllegalArgumentException(
+            "Every account in " + path + " needs a name and a shufflePlaylist");
+      }
+      // Names prefix the state files, so two entries with the same name would overwrite each other
+      if (!names.add(account.getName())) {
+        throw new IllegalArgumentException("Duplicate account name in " + path + ": "
+            + account.getName());
+      }
+      for (Artist artist : account.getArtists()) {
+        if (artist.getTopTracks() < 0) {
+          throw new IllegalArgumentException("Artist " + artist.getName() + " of account "
+              + account.getName() + " in " + path + " has a negative topTracks");
+        }
+      }
+    }
+    return config;
+  }
+
+  public List<Account> getAccounts() {
+    return accounts;
+  }
+
+  public void setAccounts(List<Account> accounts) {
+    this.accounts = accounts;
+  }
+
+  public static class Account {
+
+    private String name;
+    // Defaults to <name>_spotify_tokens
+    private String tokenFile;
+    private String shufflePlaylist;
+    private boolean likedSongs = true;
+    private boolean savedAlbums = true;
+    private List<Playlist> playlists = new ArrayList<>();
+    private List<Artist> artists = new ArrayList<>();
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public String getTokenFile() {
+      return tokenFile;
+    }
+
+    public void setTokenFile(String tokenFile) {
+      this.tokenFile = tokenFile;
+    }
+
+    public String getShufflePlaylist() {
+      return shufflePlaylist;
+    }
+
+    public void setShufflePlaylist(String shufflePlaylist) {
+      this.shufflePlaylist = shufflePlaylist;
+    }
+
+    public boolean isLikedSongs() {
+      return likedSongs;
+    }
+
+    public void setLikedSongs(boolean likedSongs) {
+      this.likedSongs = likedSongs;
+    }
+
+    public boolean isSavedAlbums() {
+      return savedAlbums;
+    }
+
+    public void setSavedAlbums(boolean savedAlbums) {
+      this.savedAlbums = savedAlbums;
+    }
+
+    public List<Playlist> getPlaylists() {
+      return playlists;
+    }
+
+    public void setPlaylists(List<Playlist> playlists) {
+      this.playlists = playlists;
+    }
+
+    public List<Artist> getArtists() {
+      return artists;
+    }
+
+    public void setArtists(List<Artist> artists) {
+      this.artists = artists;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.jled.playlistshuffle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntPredicate;
+
+/**
+ * Writes a list in fixed-size batches with a bounded number of batches in flight. Batches may land
+ * in any order, which is fine for an already shuffled list. Batches are sent once: an append that
+ * failed may still have landed, so retrying here could duplicate it. Rejections that are known to
+ * happen before the write (rate limits) are retried by the call itself.
+ */
+public class BatchWriter {
+
+  @FunctionalInterface
+  public interface BatchCall {
+
+    void write(int index, List<String> batch) throws Exception;
+  }
+
+  private final SpotifyExecutor executor;
+  private final int batchSize;
+  private final Semaphore inFlightBatches;
+
+  public BatchWriter(SpotifyExecutor executor, int batchSize, int maxInFlightBatches) {
+    this.executor = executor;
+    this.batchSize = batchSize;
+    this.inFlightBatches = new Semaphore(maxInFlightBatches);
+  }
+
+  public int writeAll(List<String> items, BatchCall call) throws Exception {
+    return writeAll(items, index -> false, call);
+  }
+
+  // Returns the number of items written; batches matching skip are left out, e.g. when resuming.
+  // The first failing batch fails the call.
+  public int writeAll(List<String> items, IntPredicate skip, BatchCall call) throws Exception {
+    List<Integer> indexes = new ArrayList<>();
+    for (int index = 0; index * batchSize < items.size(); index++) {
+      if (!skip.test(index)) {
+        indexes.add(index);
+      }
+    }
+
+    List<Integer> written = executor.map(indexes, index -> {
+      List<String> batch = items.subList(index * batchSize,
+          Math.min((index + 1) * batchSize, items.size()));
+      inFlightBatches.acquire();
+      try {
+        call.write(index, batch);
+        return batch.size();
+      } finally {
+        inFlightBatches.release();
+      }
+    });
+    return written.stream().mapToInt(Integer::intValue).sum();
+  }
+}
@@ -0,0 +1,145 @@
+package com.jled.playlistshuffle;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedges idempotent requests: when a call has been out for longer than the running p95 of its
+ * endpoint, one duplicate is sent and whichever answers first wins. The clock starts when the
+ * request is actually sent, not while it waits for a permit, matching how the p95 is measured.
+ * Hedges are paid for from a budget that grows by a small fraction of every request and is emptied
+ * on a 429, so hedging can't turn into extra rate-limit pressure.
+ */
+public class Hedger {
+
+  private static final int WINDOW = 200;
+  private static final int MIN_SAMPLES = 20;
+  private static final double PERCENTILE = 0.95;
+  private static final double MAX_BUDGET = 10;
+
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+  private final double budgetPerRequest;
+  private double budget;
+
+  public Hedger(double budgetPerRequest) {
+    this.budgetPerRequest = budgetPerRequest;
+  }
+
+  @FunctionalInterface
+  public interface Request<T> {
+
+    // Runs sent once the request is past any queueing and about to go out
+    T send(Runnable sent) throws Exception;
+  }
+
+  public <T> T call(String endpoint, Request<T> primary, Callable<T> hedge) throws Exception {
+    deposit();
+    long threshold = latencies.computeIfAbsent(endpoint, key -> new LatencyWindow())
+        .percentileNanos();
+
+    CompletionService<T> race = new ExecutorCompletionService<>(executor);
+    // Also released if the primary ends without being sent, e.g. when interrupted in the queue
+    CountDownLatch sent = new CountDownLatch(1);
+    Future<T> primaryFuture = race.submit(() -> {
+      try {
+        return primary.send(sent::countDown);
+      } finally {
+        sent.countDown();
+      }
+    });
+    Future<T> hedgeFuture = null;
+    int pending = 1;
+    Exception failure = null;
+    try {
+      Future<T> done;
+      if (threshold < 0) {
+        done = race.take();
+      } else {
+        sent.await();
+        done = race.poll(threshold, TimeUnit.NANOSECONDS);
+      }
+      if (done == null) {
+        if (withdraw()) {
+          hedgeFuture = race.submit(hedge);
+          pending++;
+        }
+        done = race.take();
+      }
+      while (true) {
+        pending--;
+        try {
+          return done.get();
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause() instanceof Exception cause ? cause : e;
+          }
+        }
+        if (pending == 0) {
+          throw failure;
+        }
+        done = race.take();
+      }
+    } finally {
+      primaryFuture.cancel(true);
+      if (hedgeFuture != null) {
+        hedgeFuture.cancel(true);
+      }
+    }
+  }
+
+  // Latency of one successful call, timed by the caller around the HTTP call alone: permit and
+  // rate-limiter waits are queueing, and counting them would push the p95 up under load
+  public void record(String endpoint, long nanos) {
+    latencies.computeIfAbsent(endpoint, key -> new LatencyWindow()).record(nanos);
+  }
+
+  // Called on a 429: no hedging until the budget has been earned back
+  public synchronized void onRateLimited() {
+    budget = 0;
+  }
+
+  private synchronized void deposit() {
+    budget = Math.min(MAX_BUDGET, budget + budgetPerRequest);
+  }
+
+  private synchronized boolean withdraw() {
+    if (budget < 1) {
+      return false;
+    }
+    budget -= 1;
+    return true;
+  }
+
+  private static class LatencyWindow {
+
+    private final long[] samples = new long[WINDOW];
+    private int count;
+
+    synchronized void record(long nanos) {
+      samples[count % WINDOW] = nanos;
+      count++;
+    }
+
+    // Running p95 of the last WINDOW successful calls, or -1 until there are enough of them
+    synchronized long percentileNanos() {
+      int size = Math.min(count, WINDOW);
+      if (size < MIN_SAMPLES) {
+        return -1;
+      }
+      long[] sorted = Arrays.copyOf(samples, size);
+      Arrays.sort(sorted);
+      return sorted[(int) Math.ceil(PERCENTILE * size) - 1];
+    }
+  }
+}
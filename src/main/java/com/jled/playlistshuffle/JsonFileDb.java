@@ -5,45 +5,180 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+// Keeps data.json in memory after the first read and writes changes back in the background
 public class JsonFileDb {
+    private static final Logger LOG = LoggerFactory.getLogger(JsonFileDb.class);
     private static final String FILE_PATH = "data.json";
     private static final ObjectMapper mapper = new ObjectMapper();
+    private static final long WRITE_DELAY_MILLIS = 500;
 
-    // Loads the entire Config object
-    public static Config load() throws IOException {
-        File file = new File(FILE_PATH);
-        if (!file.exists()) return new Config(); // Return empty config if no file exists
-        return mapper.readValue(file, new TypeReference<>() {});
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "json-file-db-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static Config config;
+    private static final Map<String, Playlist> playlistsById = new HashMap<>();
+    private static final Map<String, Artist> artistsById = new HashMap<>();
+    private static boolean dirty;
+    private static boolean flushScheduled;
+    private static long lastModified;
+
+    static {
+        // Pending changes are written out even if the caller never flushes explicitly
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                flush();
+            } catch (IOException e) {
+                LOG.error("Error writing {}: {}", FILE_PATH, e.getMessage());
+            }
+        }));
     }
 
-    // Saves the entire Config object
-    public static void save(Config config) throws IOException {
-        mapper.writerWithDefaultPrettyPrinter().writeValue(new File(FILE_PATH), config);
+    // Loads the entire Config object, reading the file only once per process
+    public static synchronized Config load() throws IOException {
+        if (config == null) {
+            File file = new File(FILE_PATH);
+            if (file.exists()) {
+                Config read = mapper.readValue(file, new TypeReference<>() {});
+                validate(read);
+                config = read;
+            } else {
+                config = new Config(); // Empty config if no file exists
+            }
+            lastModified = file.lastModified();
+            reindex();
+        }
+        return config;
+    }
+
+    // Replaces the in-memory Config and schedules it to be written
+    public static synchronized void save(Config updated) {
+        config = updated;
+        reindex();
+        markDirty();
     }
 
     // Loads only the playlists from the config
-    public static List<Playlist> loadPlaylists() throws IOException {
-        return load().getPlaylists();
+    public static synchronized List<Playlist> loadPlaylists() throws IOException {
+        return new ArrayList<>(load().getPlaylists());
     }
 
     // Loads only the artists from the config
-    public static List<Artist> loadArtists() throws IOException {
-        return load().getArtists();
+    public static synchronized List<Artist> loadArtists() throws IOException {
+        return new ArrayList<>(load().getArtists());
+    }
+
+    // Looks up a known playlist by id without scanning the list
+    public static synchronized boolean hasPlaylist(String id) throws IOException {
+        load();
+        return playlistsById.containsKey(id);
+    }
+
+    // Looks up a known artist by id without scanning the list
+    public static synchronized boolean hasArtist(String id) throws IOException {
+        load();
+        return artistsById.containsKey(id);
+    }
+
+    // Saves the playlists by updating the in-memory config
+    public static synchronized void savePlaylists(List<Playlist> playlists) throws IOException {
+        load().setPlaylists(new ArrayList<>(playlists));
+        reindex();
+        markDirty();
+    }
+
+    // Saves the artists by updating the in-memory config
+    public static synchronized void saveArtists(List<Artist> artists) throws IOException {
+        load().setArtists(new ArrayList<>(artists));
+        reindex();
+        markDirty();
+    }
+
+    // Lets a long-running process pick up edits made to data.json by hand. Unwritten changes of our
+    // own win over the file.
+    public static synchronized void reloadIfChanged() throws IOException {
+        if (config != null && !dirty && new File(FILE_PATH).lastModified() != lastModified) {
+            LOG.info("{} changed on disk, reloading", FILE_PATH);
+            config = null;
+            load();
+        }
+    }
+
+    // Drops the in-memory config so the next load reads data.json again, e.g. for benchmarking.
+    // Pending changes are written first.
+    static synchronized void reset() throws IOException {
+        flush();
+        config = null;
+        playlistsById.clear();
+        artistsById.clear();
+    }
+
+    // Writes pending changes now; the temp file + atomic rename means a crash leaves either the old
+    // or the new data.json on disk, never a partial one
+    public static synchronized void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        File tmp = new File(FILE_PATH + ".tmp");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(tmp, config);
+        Files.move(tmp.toPath(), new File(FILE_PATH).toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        lastModified = new File(FILE_PATH).lastModified();
+        dirty = false;
+    }
+
+    // Coalesces bursts of saves into a single write
+    private static void markDirty() {
+        dirty = true;
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        writer.schedule(() -> {
+            synchronized (JsonFileDb.class) {
+                flushScheduled = false;
+                try {
+                    flush();
+                } catch (IOException e) {
+                    LOG.error("Error writing {}: {}", FILE_PATH, e.getMessage());
+                }
+            }
+        }, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
     }
 
-    // Saves the playlists by updating the config and re-saving it
-    public static void savePlaylists(List<Playlist> playlists) throws IOException {
-        Config config = load(); // Load current configuration
-        config.setPlaylists(playlists); // Update playlists
-        save(config); // Save updated config
+    private static void reindex() {
+        playlistsById.clear();
+        for (Playlist playlist : config.getPlaylists()) {
+            playlistsById.put(playlist.getId(), playlist);
+        }
+        artistsById.clear();
+        for (Artist artist : config.getArtists()) {
+            artistsById.put(artist.getId(), artist);
+        }
     }
 
-    // Saves the artists by updating the config and re-saving it
-    public static void saveArtists(List<Artist> artists) throws IOException {
-        Config config = load(); // Load current configuration
-        config.setArtists(artists); // Update artists
-        save(config); // Save updated config
+    // Checked once per read of the file, so a bad hand edit is reported instead of failing the
+    // artist halfway through a run; the file is left for the user to fix
+    private static void validate(Config read) {
+        for (Artist artist : read.getArtists()) {
+            if (artist.getTopTracks() < 0) {
+                throw new IllegalArgumentException("Artist " + artist.getName() + " in " + FILE_PATH
+                        + " has a negative topTracks: " + artist.getTopTracks());
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,13 +1,15 @@
 package com.jled.playlistshuffle;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonArray;
+import com.jled.playlistshuffle.SpotifyJson.AlbumTracks;
+import com.jled.playlistshuffle.SpotifyJson.Page;
+import com.jled.playlistshuffle.SpotifyJson.PlaylistHeader;
+import com.jled.playlistshuffle.SpotifyJson.PlaylistSummary;
+import com.jled.playlistshuffle.SpotifyJson.Resource;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import io.github.cdimascio.dotenv.Dotenv;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -16,33 +18,38 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.message.BasicHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.SpotifyHttpManager;
 import se.michaelthelin.spotify.enums.ModelObjectType;
+import se.michaelthelin.spotify.exceptions.detailed.BadGatewayException;
+import se.michaelthelin.spotify.exceptions.detailed.InternalServerErrorException;
+import se.michaelthelin.spotify.exceptions.detailed.ServiceUnavailableException;
 import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import se.michaelthelin.spotify.exceptions.detailed.UnauthorizedException;
 import se.michaelthelin.spotify.model_objects.credentials.AuthorizationCodeCredentials;
-import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
-import se.michaelthelin.spotify.model_objects.specification.Paging;
-import se.michaelthelin.spotify.model_objects.specification.PagingCursorbased;
-import se.michaelthelin.spotify.model_objects.specification.PlaylistSimplified;
-import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
-import se.michaelthelin.spotify.model_objects.specification.SavedAlbum;
-import se.michaelthelin.spotify.model_objects.specification.SavedTrack;
-import se.michaelthelin.spotify.model_objects.specification.Track;
-import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
 import se.michaelthelin.spotify.requests.IRequest;
 import se.michaelthelin.spotify.requests.data.follow.GetUsersFollowedArtistsRequest;
 
@@ -53,14 +60,14 @@ public class Main {
   private static final URI redirectUri = SpotifyHttpManager.makeUri(
       "http://127.0.0.1:8080/callback");
   private static final String TOKEN_FILE = "spotify_tokens"; // File to store tokens
-  private static SpotifyApi spotifyApi;
-  private static HttpServer server;
   private static final String SHUFFLE_ID = dotenv.get("SHUFFLE_PLAYLIST");
   private static final int MAX_TRACKS_PER_REQUEST = 100;
 
-  private static final CountDownLatch latch = new CountDownLatch(1);
+  // False in daemon and batch mode, where new playlists and artists can't be asked about
+  private static boolean interactive = true;
 
-  private static final Set<String> shufflePlaylistTrackUris = new HashSet<>();
+  // "random" (the default) or "artist-spread", see ShuffleStrategy
+  private static final String SHUFFLE_STRATEGY = dotenv.get("SHUFFLE_STRATEGY", "random");
 
   private static final String SCOPES = String.join(" ", "playlist-read-private",
       "user-library-read", "playlist-modify-private", "ugc-image-upload",
@@ -68,48 +75,367 @@ public class Main {
 
   private static final int PAGING_LIMIT = 50;
 
-  private static final String PLAYLIST_FILE = "shuffle_playlist.txt";
+  private static final int MAX_ALBUMS_PER_REQUEST = 20;
+
+  private static final String PLAYLIST_FILE = "shuffle_playlist.bin";
+
+  // Written by versions before the binary list, one URI per line
+  private static final Path LEGACY_PLAYLIST_FILE = Paths.get("shuffle_playlist.txt");
+
+  private static final String JOURNAL_FILE = "shuffle_journal.log";
+
+  private static final String SHARDS_FILE = "shuffle_shards.json";
+
+  // Spotify's cap on playlist items; a larger pool is split across several shuffle playlists
+  private static final int SHARD_SIZE = Integer.parseInt(dotenv.get("SHARD_SIZE", "10000"));
+
+  // Field projections for playlist reads, everything else in the response is never used
+  private static final String PLAYLIST_FIELDS =
+      "snapshot_id,tracks(total,next,items(track(uri,artists(id))))";
+
+  private static final String PLAYLIST_ITEM_FIELDS = "total,next,items(track(uri,artists(id)))";
+
+  private static final String PLAYLIST_CACHE_FILE = "playlist_cache.json";
+
+  private static final String ALBUM_CACHE_FILE = "album_cache.json";
+
+  private static AlbumCache albumCache;
+
+  private static PlaylistCache playlistCache;
+
+  private static final int MAX_SERVER_ERROR_RETRIES = 5;
+
+  // 429s are waited out as Spotify asks and don't count against the 5xx retries above, but a
+  // request that is still refused after this many waits gives up
+  private static final int MAX_RATE_LIMITED_RETRIES = 20;
+
+  private static final String AUTHORIZATION = "Authorization";
+
+  private static final String BEARER = "Bearer ";
+
+  // Shared by every request so a 429 on one thread slows all of them down
+  private static final RateLimiter RATE_LIMITER = new RateLimiter(
+      Double.parseDouble(dotenv.get("RATE_LIMIT_RPS", "10")),
+      Double.parseDouble(dotenv.get("RATE_LIMIT_BURST", "10")));
+
+  // Virtual-thread fan-out, bounded by the number of requests allowed in flight at once
+  private static final SpotifyExecutor EXECUTOR = new SpotifyExecutor(
+      Integer.parseInt(dotenv.get("MAX_IN_FLIGHT", "16")));
+
+  private static final Duration COLLECTION_DEADLINE = Duration.ofSeconds(
+      Long.parseLong(dotenv.get("COLLECTION_DEADLINE_SECONDS", "600")));
+
+  // Optional hedging of slow reads; each request earns 5% of a hedge
+  private static final Hedger HEDGER = Boolean.parseBoolean(dotenv.get("HEDGE_REQUESTS", "false"))
+      ? new Hedger(0.05) : null;
+
+  private static final Pattern ID_SEGMENT = Pattern.compile("/[0-9A-Za-z]{22}(?=/|$)");
+
+  private static final Metrics METRICS = new Metrics();
+
+  private static final Path REPORT_FILE = Paths.get("run_report.json");
+
+  private static final Path PROMETHEUS_FILE = Paths.get("run_metrics.prom");
+
+  // Raw response bodies, the most recent READ_MEMO_SIZE of them memoized for the run
+  private static final SingleFlight<String, String> READS = new SingleFlight<>(
+      Integer.parseInt(dotenv.get("READ_MEMO_SIZE", "500")));
+
+  // Playlist contents by id and snapshot, so accounts that follow the same playlist page it once.
+  // Only accounts that saw that snapshot in their own listing share it. Only reads in flight are
+  // shared; an account arriving after the read finds the contents in the playlist cache instead.
+  private static final SingleFlight<String, PlaylistContents> PLAYLIST_READS =
+      new SingleFlight<>(0);
+
+  // Catalog reads are the same for every account, so they are shared regardless of the token
+  private static final Pattern CATALOG_PATH = Pattern.compile("/v1/(albums|artists|tracks)(/|$)");
+
+  private static final Paginator PAGINATOR = new Paginator(EXECUTOR);
+
+  private static final BatchWriter BATCH_WRITER = new BatchWriter(EXECUTOR,
+      MAX_TRACKS_PER_REQUEST, Integer.parseInt(dotenv.get("MAX_WRITE_BATCHES_IN_FLIGHT", "4")));
+
+  // Everything below belongs to one account; the limiter, executor, caches and metrics above are
+  // shared by all of them
+
+  // Name used in logs and state file names, null for the single account configured in .env
+  private final String name;
+  private final SpotifyApi spotifyApi;
+  // Target playlists as configured, comma separated; the first one is the shuffle playlist proper
+  private final List<String> shuffleIds;
+  private final String shuffleId;
+  private final Path playlistFile;
+  private final String journalFile;
+  private final String shardsFile;
+
+  // Sources from the batch file, or null to use data.json and ask about new ones
+  private final BatchConfig.Account sources;
+
+  // Keeps spotifyApi's tokens current: refreshed before expiry and, once per token, after a 401
+  private final TokenStore tokens;
+
+  private HttpServer server;
+
+  private final CountDownLatch latch = new CountDownLatch(1);
+
+  private final TrackIdSet shufflePlaylistTrackUris = new TrackIdSet();
+
+  // Lead artist of every track this run has seen, filled from responses it already makes. Cleared
+  // at the start of each run, so it never holds more than one run's sources.
+  private final ArtistIndex artists = new ArtistIndex();
+  private final ShuffleStrategy shuffleStrategy;
+
+  // Artists of the liked songs, kept between daemon cycles because unchanged liked songs are
+  // reused without being parsed again; trimmed to the current liked songs on every run
+  private final Map<String, String> likedArtists = new ConcurrentHashMap<>();
+
+  // Shuffle playlist as it was on the server before this run, in playlist order
+  private PlaylistContents shufflePlaylistContents;
+
+  // Sharded mode: the record of earlier runs, and every shard as it was before this run
+  private ShuffleShards shards;
+  private final Map<String, PlaylistContents> shardContents = new ConcurrentHashMap<>();
+
+  // Owner for automatically created shards, looked up the first time one is needed
+  private String userId;
+
+  // Paged sources from the previous daemon cycle, see fetchUnlessUnchanged
+  private final Map<String, FetchedSource<?>> fetchedSources = new ConcurrentHashMap<>();
+
+  // snapshot_id of every playlist seen in the last listing, used to validate the playlist cache
+  private final Map<String, String> playlistSnapshots = new ConcurrentHashMap<>();
+
+  // This run's playlist listing, see listPlaylistSummaries
+  private List<PlaylistSummary> playlistSummaries;
+
+  private Main(String name, String tokenFile, String shuffleIds, BatchConfig.Account sources) {
+    this.name = name;
+    this.shuffleIds = Arrays.stream(shuffleIds.split(",")).map(String::trim)
+        .filter(id -> !id.isEmpty()).toList();
+    this.shuffleId = this.shuffleIds.get(0);
+    this.sources = sources;
+    this.shuffleStrategy = ShuffleStrategy.named(SHUFFLE_STRATEGY, artists);
+    String prefix = name == null ? "" : name + "_";
+    this.playlistFile = Paths.get(prefix + PLAYLIST_FILE);
+    this.journalFile = prefix + JOURNAL_FILE;
+    this.shardsFile = prefix + SHARDS_FILE;
+    // Host, port and scheme are only overridden to point the client at a local stub
+    this.spotifyApi = new SpotifyApi.Builder().setClientId(dotenv.get("SPOTIFY_CLIENT"))
+        .setClientSecret(dotenv.get("SPOTIFY_SECRET")).setRedirectUri(redirectUri)
+        .setScheme(dotenv.get("SPOTIFY_API_SCHEME", SpotifyApi.DEFAULT_SCHEME))
+        .setHost(dotenv.get("SPOTIFY_API_HOST", SpotifyApi.DEFAULT_HOST))
+        .setPort(Integer.parseInt(dotenv.get("SPOTIFY_API_PORT",
+            String.valueOf(SpotifyApi.DEFAULT_PORT))))
+        .build();
+    this.tokens = new TokenStore(Paths.get(tokenFile), this::refreshTokens, tokens -> {
+      spotifyApi.setAccessToken(tokens.accessToken());
+      spotifyApi.setRefreshToken(tokens.refreshToken());
+    });
+  }
+
+  // One entry of the batch file; its state files are prefixed with the entry's name
+  private static Main forBatchEntry(BatchConfig.Account account) {
+    String tokenFile = account.getTokenFile() != null ? account.getTokenFile()
+        : account.getName() + "_" + TOKEN_FILE;
+    return new Main(account.getName(), tokenFile, account.getShufflePlaylist(), account);
+  }
 
   public static void main(String[] args) throws Exception {
-    spotifyApi = new SpotifyApi.Builder().setClientId(dotenv.get("SPOTIFY_CLIENT"))
-        .setClientSecret(dotenv.get("SPOTIFY_SECRET")).setRedirectUri(redirectUri).build();
+    try {
+      run(args);
+    } finally {
+      // Written even when the run fails, that is when it is needed most
+      writeReport();
+    }
+  }
 
-    // Load tokens from disk if available
-    if (!loadTokensFromDisk()) {
-      // If tokens are not available, perform the authorization flow
-      performOAuthFlow();
-    } else if (!isAccessTokenValid()) {
-      // If access token is expired, refresh it
-      refreshAccessToken();
+  private static void writeReport() throws IOException {
+    METRICS.writeJson(REPORT_FILE);
+    METRICS.writePrometheus(PROMETHEUS_FILE);
+  }
+
+  private static void run(String[] args) throws Exception {
+    if (args.length > 0 && args[0].equals("--batch")) {
+      if (args.length < 2) {
+        throw new IllegalArgumentException("Usage: --batch <accounts.json>");
+      }
+      runBatch(Paths.get(args[1]));
+      return;
     }
 
+    Main account = new Main(null, TOKEN_FILE, SHUFFLE_ID, null);
+    account.authorize();
+
     if (args.length > 0 && args[0].equals("--read-from-disk")) {
-      LOG.info("Reading playlist from disk and adding tracks in chunks...");
-      List<String> tracksFromFile = readListFromFile(PLAYLIST_FILE);
-      addTracksInChunks(tracksFromFile);
+      LOG.info("Reading playlist from disk and resuming the last write...");
+      try (Metrics.Stage stage = METRICS.stage("write")) {
+        List<String> tracksFromFile = account.readShuffledTracks();
+        account.resumeShuffleWrite(tracksFromFile);
+      }
+    } else if (args.length > 0 && args[0].equals("--daemon")) {
+      account.runDaemon();
     } else {
+      account.shuffleOnce(true);
+    }
+  }
 
-      LOG.info("Loading initial playlist state");
-      shufflePlaylistTrackUris.addAll(getPlaylistTrackUris(SHUFFLE_ID));
-      LOG.info("Shuffle songs : {}", shufflePlaylistTrackUris.size());
+  private void authorize() throws Exception {
+    try (Metrics.Stage stage = METRICS.stage("auth")) {
+      // Load tokens from disk if available
+      if (!tokens.load()) {
+        // If tokens are not available, perform the authorization flow
+        performOAuthFlow();
+      } else {
+        // The stored expiry says whether a refresh is due, no probe request needed
+        tokens.start();
+      }
+    }
+  }
 
-      addPlaylistsToShuffleList();
-      addFollowedArtistsToShuffleList();
-      addUserAlbums();
-      shuffleThePlaylist();
-      updatePlaylistImage();
+  // Both caches are shared by every account, so they are loaded once before any of them starts
+  private static synchronized void loadCaches() throws IOException {
+    if (albumCache == null) {
+      albumCache = AlbumCache.load(ALBUM_CACHE_FILE);
+    }
+    if (playlistCache == null) {
+      playlistCache = PlaylistCache.load(PLAYLIST_CACHE_FILE);
+    }
+  }
 
-      LOG.info("Shuffle songs : {}", shufflePlaylistTrackUris.size());
-      LOG.info("getting playlist again to verify count..");
-      shufflePlaylistTrackUris.clear();
-      shufflePlaylistTrackUris.addAll(getPlaylistTrackUris(SHUFFLE_ID));
+  private void shuffleOnce(boolean uploadImage) throws Exception {
+    artists.clear();
+    try (Metrics.Stage stage = METRICS.stage("collection")) {
+      LOG.info("Loading initial playlist state{}", logSuffix());
+      loadShuffleTargets();
       LOG.info("Shuffle songs : {}", shufflePlaylistTrackUris.size());
 
+      loadCaches();
+      collectShuffleSources();
+      albumCache.save();
+    }
+    shuffleThePlaylist();
+    if (uploadImage) {
+      try (Metrics.Stage stage = METRICS.stage("image")) {
+        for (String playlistId : shuffleIds) {
+          updatePlaylistImage(playlistId);
+        }
+      }
     }
   }
 
-  private static void performOAuthFlow() throws Exception {
-    LOG.info("Starting authorization process...");
+  // What the target playlists hold now goes into the pool like any other source. Shards beyond the
+  // first are taken from the shard record while they are still at the snapshot it recorded.
+  private void loadShuffleTargets() throws Exception {
+    shufflePlaylistContents = getPlaylistContents(shuffleId);
+    shufflePlaylistContents.artistIds().forEach(artists::put);
+    addToShuffleList(shufflePlaylistContents.trackUris());
+    shardContents.clear();
+    shardContents.put(shuffleId, shufflePlaylistContents);
+    if (shards == null) {
+      shards = ShuffleShards.load(shardsFile);
+    }
+
+    List<String> others = shardIds().stream().filter(id -> !id.equals(shuffleId)).toList();
+    if (others.isEmpty()) {
+      return;
+    }
+    listPlaylistSummaries();
+    List<PlaylistContents> contents = EXECUTOR.map(others, playlistId -> {
+      String snapshotId = playlistSnapshots.get(playlistId);
+      List<String> recorded = shards.get(playlistId, snapshotId);
+      return recorded != null ? new PlaylistContents(snapshotId, recorded, Map.of())
+          : getPlaylistContents(playlistId);
+    });
+    for (int i = 0; i < others.size(); i++) {
+      shardContents.put(others.get(i), contents.get(i));
+      contents.get(i).artistIds().forEach(artists::put);
+      addToShuffleList(contents.get(i).trackUris());
+    }
+  }
+
+  // Configured targets first, then the ones created by earlier runs
+  private List<String> shardIds() {
+    Set<String> ids = new LinkedHashSet<>(shuffleIds);
+    ids.addAll(shards.playlistIds());
+    return new ArrayList<>(ids);
+  }
+
+  private boolean isShuffleTarget(String playlistId) {
+    return shuffleIds.contains(playlistId)
+        || shards != null && shards.playlistIds().contains(playlistId);
+  }
+
+  // Keeps the client, config and caches in memory between cycles. Each cycle starts from an empty
+  // shuffle set, a fresh playlist listing and an empty read memo; playlists are only re-paged when
+  // their snapshot changed, and liked songs and saved albums only when their newest page or total
+  // changed. Metrics accumulate over the life of the process and the report is rewritten after
+  // every cycle.
+  private void runDaemon() throws Exception {
+    interactive = false;
+    Duration interval = Duration.ofMinutes(
+        Long.parseLong(dotenv.get("RESHUFFLE_INTERVAL_MINUTES", "360")));
+    int port = Integer.parseInt(dotenv.get("DAEMON_PORT", "8081"));
+
+    try (ShuffleDaemon daemon = new ShuffleDaemon(cycle -> {
+      try {
+        if (cycle > 1) {
+          JsonFileDb.reloadIfChanged();
+        }
+        shufflePlaylistTrackUris.clear();
+        playlistSnapshots.clear();
+        playlistSummaries = null;
+        READS.clear();
+        if (playlistCache != null) {
+          playlistCache.startRun();
+        }
+        // The cover image never changes, so it is only uploaded once per process
+        shuffleOnce(cycle == 1);
+        return shufflePlaylistTrackUris.size();
+      } finally {
+        writeReport();
+      }
+    }, interval, port)) {
+      daemon.start();
+      daemon.await();
+    }
+  }
+
+  // Every entry of the batch file in one process. Entries without saved tokens are authorized one
+  // after another first, since each needs the browser and the callback port. Then all of them
+  // shuffle concurrently through the shared limiter, executor and caches. A failing entry is
+  // logged and doesn't stop the others; the run fails at the end if any did.
+  private static void runBatch(Path configFile) throws Exception {
+    interactive = false;
+    List<Main> accounts = new ArrayList<>();
+    for (BatchConfig.Account entry : BatchConfig.load(configFile).getAccounts()) {
+      Main account = forBatchEntry(entry);
+      account.authorize();
+      accounts.add(account);
+    }
+    loadCaches();
+
+    List<Boolean> succeeded = EXECUTOR.map(accounts, account -> {
+      try {
+        account.shuffleOnce(true);
+        LOG.info("Finished shuffle for {}", account.name);
+        return true;
+      } catch (Exception e) {
+        LOG.error("Shuffle for {} failed", account.name, e);
+        return false;
+      }
+    });
+    long failed = succeeded.stream().filter(ok -> !ok).count();
+    if (failed > 0) {
+      throw new IllegalStateException(failed + " of " + accounts.size() + " accounts failed");
+    }
+  }
+
+  private String logSuffix() {
+    return name == null ? "" : " for " + name;
+  }
+
+  private void performOAuthFlow() throws Exception {
+    LOG.info("Starting authorization process{}...", logSuffix());
 
     // Step 1: Generate Authorization URI
     String authorizationUri = executeWithRetry(
@@ -131,7 +457,7 @@ public class Main {
     server.stop(0); // Shut down the server after use
   }
 
-  private static class CallbackHandler implements HttpHandler {
+  private class CallbackHandler implements HttpHandler {
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
@@ -145,9 +471,7 @@ public class Main {
           // Step 3: Exchange authorization code for access and refresh tokens
           AuthorizationCodeCredentials credentials = executeWithRetry(
               spotifyApi.authorizationCode(code).build());
-          spotifyApi.setAccessToken(credentials.getAccessToken());
-          spotifyApi.setRefreshToken(credentials.getRefreshToken());
-          saveTokensToDisk(credentials.getAccessToken(), credentials.getRefreshToken());
+          tokens.update(toTokens(credentials));
 
           String response = "Authorization successful! You can close this window.";
           exchange.sendResponseHeaders(200, response.length());
@@ -172,70 +496,56 @@ public class Main {
     }
   }
 
-  private static boolean loadTokensFromDisk() throws IOException {
-    Path tokenPath = Paths.get(TOKEN_FILE);
-    if (!Files.exists(tokenPath)) {
-      return false;
-    }
-
-    List<String> tokens = Files.readAllLines(tokenPath);
-    if (tokens.size() < 2) {
-      return false;
-    }
-
-    spotifyApi.setAccessToken(tokens.get(0));
-    spotifyApi.setRefreshToken(tokens.get(1));
-    return true;
-  }
-
-  private static void saveTokensToDisk(String accessToken, String refreshToken) throws IOException {
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(TOKEN_FILE))) {
-      writer.write(accessToken + "\n");
-      writer.write(refreshToken + "\n");
-    }
+  private TokenStore.Tokens refreshTokens(String refreshToken) throws Exception {
+    return toTokens(executeWithRetry(
+        spotifyApi.authorizationCodeRefresh().refresh_token(refreshToken).build()));
   }
 
-  private static void refreshAccessToken() throws Exception {
-    AuthorizationCodeCredentials credentials = executeWithRetry(
-        spotifyApi.authorizationCodeRefresh().build());
-    spotifyApi.setAccessToken(credentials.getAccessToken());
-    saveTokensToDisk(credentials.getAccessToken(), spotifyApi.getRefreshToken());
-    LOG.info("Access token refreshed.");
+  private static TokenStore.Tokens toTokens(AuthorizationCodeCredentials credentials) {
+    return new TokenStore.Tokens(credentials.getAccessToken(), credentials.getRefreshToken(),
+        Instant.now().plusSeconds(credentials.getExpiresIn()));
   }
 
-  private static boolean isAccessTokenValid() {
-    try {
-      executeWithRetry(spotifyApi.getCurrentUsersProfile().build()); // Example API call
-      return true; // Token is valid if call succeeds
-    } catch (Exception e) {
-      return false; // Token is invalid
+  // The user's own and followed playlists, recording the snapshot of each for the playlist cache.
+  // Listed once per run; the shard lookup and the source selection both need it.
+  private List<PlaylistSummary> listPlaylistSummaries() throws Exception {
+    if (playlistSummaries != null) {
+      return playlistSummaries;
+    }
+    List<PlaylistSummary> playlists = PAGINATOR.fetchAll(PAGING_LIMIT,
+        offset -> SpotifyJson.playlistSummaryPage(getJson(
+            spotifyApi.getListOfCurrentUsersPlaylists() // Fetch playlists
+                .limit(PAGING_LIMIT).offset(offset).build())));
+    for (PlaylistSummary playlistSummary : playlists) {
+      playlistSnapshots.put(playlistSummary.id(), playlistSummary.snapshotId());
     }
+    playlistSummaries = playlists;
+    return playlists;
   }
 
-  public static List<Playlist> listPlaylists() throws Exception {
+  public List<Playlist> listPlaylists() throws Exception {
     List<Playlist> playlistData = JsonFileDb.loadPlaylists();
-    Paging<PlaylistSimplified> playlistsPaging = executeWithRetry(
-        spotifyApi.getListOfCurrentUsersPlaylists() // Fetch playlists
-            .build());
+    List<PlaylistSummary> playlists = listPlaylistSummaries();
 
     Scanner scanner = new Scanner(System.in);
+    // Ids asked about in this listing, which data.json only records once they are saved. Pages are
+    // read concurrently, so a playlist that moves while they are read can come up twice.
+    Set<String> listed = new HashSet<>();
 
-    for (PlaylistSimplified playlistSimplified : playlistsPaging.getItems()) {
+    for (PlaylistSummary playlistSummary : playlists) {
       Playlist playlist = new Playlist();
-      playlist.setName(playlistSimplified.getName());
-      playlist.setId(playlistSimplified.getId());
+      playlist.setName(playlistSummary.name());
+      playlist.setId(playlistSummary.id());
 
-      if (playlistData.contains(playlist) || playlist.getId().equals(SHUFFLE_ID)) {
+      if (JsonFileDb.hasPlaylist(playlist.getId()) || isShuffleTarget(playlist.getId())
+          || !listed.add(playlist.getId())) {
         continue;
       }
 
       // Prompt the user for "keep" input
-      LOG.info("Playlist: {} ({} tracks)", playlist.getName(),
-          playlistSimplified.getTracks().getTotal());
+      LOG.info("Playlist: {} ({} tracks)", playlist.getName(), playlistSummary.total());
       // Prompt the user for "add to shuffle" input
-      LOG.info("Add this playlist to shuffle? (y/n): ");
-      String shuffleResponse = scanner.nextLine().trim().toLowerCase();
-      playlist.setIncludeInShuffle(shuffleResponse.equals("y"));
+      playlist.setIncludeInShuffle(askToInclude(scanner, "playlist"));
 
       // Add to playlist data
       playlistData.add(playlist);
@@ -249,144 +559,368 @@ public class Main {
     return JsonFileDb.loadPlaylists();
   }
 
-  public static List<String> getLikedSongs() throws Exception {
-    List<String> likedSongsUris = new ArrayList<>();
-
-    // Fetch liked tracks in a paginated manner
-    int offset = 0; // Start at the beginning
-    boolean moreTracksAvailable = true;
+  // Nobody answers prompts in daemon mode, so new sources stay out until data.json says otherwise
+  private static boolean askToInclude(Scanner scanner, String kind) {
+    if (!interactive) {
+      LOG.info("New {} left out of the shuffle, set includeInShuffle in data.json to add it", kind);
+      return false;
+    }
+    LOG.info("Add this {} to shuffle? (y/n): ", kind);
+    return scanner.nextLine().trim().toLowerCase().equals("y");
+  }
 
-    while (moreTracksAvailable) {
-      Paging<SavedTrack> savedTracks = executeWithRetry(spotifyApi.getUsersSavedTracks()
-          .limit(PAGING_LIMIT)
-          .offset(offset) // Start offset for fetching tracks
-          .build());
+  public List<String> getLikedSongs() throws Exception {
+    // Fetch liked tracks, all pages after the first one concurrently
+    return fetchUnlessUnchanged("liked", PAGING_LIMIT,
+        offset -> SpotifyJson.trackUriPage(getJson(spotifyApi.getUsersSavedTracks()
+            .limit(PAGING_LIMIT)
+            .offset(offset) // Start offset for fetching tracks
+            .build()), likedArtists::put));
+  }
 
-      // Add track URIs to the list
-      for (SavedTrack savedTrack : savedTracks.getItems()) {
-        likedSongsUris.add(savedTrack.getTrack().getUri());
-      }
 
-      // Check if there are more tracks to fetch
-      offset += PAGING_LIMIT;
-      if (savedTracks.getNext() == null) {
-        moreTracksAvailable = false;
-      }
+  // Asks about new playlists and artists first (that part is interactive), then runs every source
+  // as its own task feeding the shared dedup set. The first failing source cancels the others and
+  // fails the run, as does missing the collection deadline. A batch entry lists its sources itself,
+  // and every one it lists is included.
+  public void collectShuffleSources() throws Exception {
+    List<Playlist> playlistsToAdd;
+    List<Artist> artistsToAdd;
+    if (sources == null) {
+      playlistsToAdd = listPlaylists().stream().filter(Playlist::isIncludeInShuffle).toList();
+      artistsToAdd = listArtists();
+    } else {
+      listPlaylistSummaries();
+      playlistsToAdd = sources.getPlaylists();
+      artistsToAdd = sources.getArtists();
+    }
+    PlaylistCache cache = playlistCache;
+
+    List<Callable<Void>> tasks = new ArrayList<>();
+    if (sources == null || sources.isLikedSongs()) {
+      tasks.add(() -> {
+        addLikedSongsToShuffleList();
+        return null;
+      });
+    }
+    for (Playlist playlist : playlistsToAdd) {
+      tasks.add(() -> {
+        addPlaylistToShuffleList(playlist, cache);
+        return null;
+      });
+    }
+    for (Artist artist : artistsToAdd) {
+      tasks.add(() -> {
+        addArtistToShuffleList(artist);
+        return null;
+      });
+    }
+    if (sources == null || sources.isSavedAlbums()) {
+      tasks.add(() -> {
+        addUserAlbums();
+        return null;
+      });
     }
 
-    return likedSongsUris;
+    EXECUTOR.map(tasks, Callable::call, COLLECTION_DEADLINE);
+    cache.save();
   }
 
+  private void addPlaylistToShuffleList(Playlist playlist, PlaylistCache cache)
+      throws Exception {
+    // Reuse the cached songs while the playlist snapshot is unchanged, otherwise page them in
+    String snapshotId = playlistSnapshots.get(playlist.getId());
+    PlaylistCache.Entry cached = cache.get(playlist.getId(), snapshotId);
+    List<String> currentPlaylistTracks;
+    if (cached == null) {
+      PlaylistContents contents = snapshotId == null ? getPlaylistContents(playlist.getId())
+          : PLAYLIST_READS.get(playlist.getId() + "@" + snapshotId,
+              () -> readPlaylistUnlessCached(playlist.getId(), snapshotId, cache));
+      cache.put(playlist.getId(), contents.snapshotId(), contents.trackUris(),
+          contents.artistIds());
+      // The read may have been led by another account, so its artists are added here
+      contents.artistIds().forEach(artists::put);
+      currentPlaylistTracks = contents.trackUris();
+    } else {
+      LOG.debug("Playlist {} unchanged, using cached tracks", playlist.getName());
+      cached.artistIds().forEach(artists::put);
+      currentPlaylistTracks = cached.trackUris();
+    }
 
-  public static void addPlaylistsToShuffleList() throws Exception {
-    List<Playlist> playlistsToAdd = listPlaylists();
-    // Step 2: Load tracks (URIs) from playlists to be added
-    for (Playlist playlist : playlistsToAdd) {
-      if (!playlist.isIncludeInShuffle()) {
-        continue;
-      }
-      // Get all songs from the current playlist
-      List<String> currentPlaylistTracks = getPlaylistTrackUris(playlist.getId());
+    addToShuffleList(currentPlaylistTracks);
+    LOG.info("Added {} tracks from playlist: {}", currentPlaylistTracks.size(),
+        playlist.getName());
+  }
 
-      shufflePlaylistTrackUris.addAll(currentPlaylistTracks);
-      LOG.info("Added {} tracks from playlist: {}", currentPlaylistTracks.size(),
-          playlist.getName());
-    }
+  // Another account may have cached the snapshot between the cache check and joining the read
+  private PlaylistContents readPlaylistUnlessCached(String playlistId, String snapshotId,
+      PlaylistCache cache) throws Exception {
+    PlaylistCache.Entry cached = cache.get(playlistId, snapshotId);
+    return cached != null
+        ? new PlaylistContents(snapshotId, cached.trackUris(), cached.artistIds())
+        : getPlaylistContents(playlistId);
+  }
 
+  private void addLikedSongsToShuffleList() throws Exception {
     List<String> likedSongs = getLikedSongs();
+    likedArtists.keySet().retainAll(new HashSet<>(likedSongs));
+    likedArtists.forEach(artists::put);
 
-    shufflePlaylistTrackUris.addAll(likedSongs);
+    addToShuffleList(likedSongs);
     LOG.info("Added {} tracks from liked songs.", likedSongs.size());
-
   }
 
-  public static void addFollowedArtistsToShuffleList() throws Exception {
-    List<Artist> artistsToAdd = listArtists();
+  private void addArtistToShuffleList(Artist artist) throws Exception {
+    List<String> artistTracks = getArtistTopTracks(artist);
+    addToShuffleList(artistTracks);
+    LOG.info("Added {} tracks from artist: {}", artistTracks.size(), artist.getName());
+  }
 
-    for (Artist artist : artistsToAdd) {
-      List<String> artistTracks = getArtistTopTracks(artist.getId());
-      shufflePlaylistTrackUris.addAll(artistTracks);
-      LOG.info("Added {} tracks from artist: {}", artistTracks.size(), artist.getName());
+  // Dedup runs inside the collection tasks, so its stage time is summed across them rather than
+  // being wall time of its own
+  // Placeholders for unavailable playlist items are dropped here, not when parsing, so that parsed
+  // playlists keep their positions
+  private void addToShuffleList(List<String> trackUris) {
+    try (Metrics.Stage stage = METRICS.stage("dedup")) {
+      shufflePlaylistTrackUris.addAll(trackUris.stream()
+          .filter(uri -> !uri.equals(SpotifyJson.UNAVAILABLE)).toList());
     }
-
   }
 
-  private static void addTracksInChunks(List<String> tracksToAdd) throws Exception {
+  // journal may be null for writes that aren't resumed with --read-from-disk
+  private int addTracksInChunks(String playlistId, List<String> tracksToAdd, WriteJournal journal,
+      IntPredicate alreadyAdded) throws Exception {
     int totalTracks = tracksToAdd.size();
     int batches = (int) Math.ceil((double) totalTracks / MAX_TRACKS_PER_REQUEST);
-    Gson gson = new Gson();
     LOG.info("Adding {} tracks in {} batch(es)...", totalTracks, batches);
 
-    for (int i = 0; i < totalTracks; i += MAX_TRACKS_PER_REQUEST) {
-      List<String> batch = tracksToAdd.subList(i,
-          Math.min(i + MAX_TRACKS_PER_REQUEST, totalTracks));
+    int added = BATCH_WRITER.writeAll(tracksToAdd, alreadyAdded, (index, batch) -> {
+      String snapshotId = executeWrite(spotifyApi
+          .addItemsToPlaylist(playlistId, SpotifyJson.toJsonArray(batch)).build()).getSnapshotId();
+      if (journal != null) {
+        journal.commit(index, snapshotId);
+      }
+      LOG.info("Added batch of {} tracks.", batch.size());
+    });
+    LOG.info("All tracks added successfully.");
+    return added;
+  }
 
-        executeWithRetry(
-            spotifyApi.addItemsToPlaylist(SHUFFLE_ID, gson.toJsonTree(batch).getAsJsonArray()).build());
-        LOG.info("Added batch of {} tracks.", batch.size());
+  // The saved shuffle list, falling back to the text file a run before the upgrade left behind
+  private List<String> readShuffledTracks() throws IOException {
+    if (!Files.exists(playlistFile) && Files.exists(LEGACY_PLAYLIST_FILE)) {
+      LOG.info("No {} yet, reading the shuffle list from {}", playlistFile, LEGACY_PLAYLIST_FILE);
+      return Files.readAllLines(LEGACY_PLAYLIST_FILE).stream()
+          .filter(line -> !line.isBlank()).toList();
     }
-    LOG.info("All tracks added successfully.");
+    return TrackListFile.read(playlistFile);
   }
 
+  // Continues an interrupted write of the saved shuffle list. If the playlist is still at the
+  // snapshot of the last journaled batch the journal is exact; otherwise (a batch may have landed
+  // without being journaled) batches already on the playlist are skipped, using the journal's
+  // offset for the batch boundaries. Without a journal those boundaries are unknown, so the
+  // playlist is diffed against the list like a normal write, keeping it up to the first mismatch.
+  private void resumeShuffleWrite(List<String> tracks) throws Exception {
+    if (shuffleIds.size() > 1 || !ShuffleShards.load(shardsFile).isEmpty()) {
+      throw new IllegalStateException("--read-from-disk only resumes a single shuffle playlist; "
+          + "run normally to bring the shards up to date");
+    }
+    // Diffing against an empty list would clear the playlist
+    if (tracks.isEmpty()) {
+      throw new IllegalStateException("No saved shuffle list to resume from " + playlistFile);
+    }
+    WriteJournal journal = WriteJournal.resume(journalFile);
+    if (journal == null || !journal.matches(shuffleId, tracks.size())) {
+      rewritePlaylist(shuffleId, getPlaylistContents(shuffleId), tracks, journalFile);
+      return;
+    }
 
-  private static List<String> getPlaylistTrackUris(String playlistId) throws Exception {
-    List<String> trackUris = Collections.synchronizedList(new ArrayList<>()); // Thread-safe list
-    int limit = 100; // API limit per request
-    int totalTracks = executeWithRetry(spotifyApi.getPlaylist(playlistId).build()).getTracks()
-        .getTotal();
+    String snapshotId = SpotifyJson.playlistHeader(getFreshJson(
+        spotifyApi.getPlaylist(shuffleId).fields("snapshot_id").build())).snapshotId();
+    if (snapshotId.equals(journal.getLastSnapshotId())) {
+      List<String> toAdd = tracks.subList(journal.getOffset(), tracks.size());
+      addTracksInChunks(shuffleId, toAdd, journal, journal::isCommitted);
+      reconcileShuffleCount(shuffleId, tracks.size());
+      journal.complete();
+      return;
+    }
 
-    List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+    int offset = journal.getOffset();
+    TrackIdSet present = new TrackIdSet();
+    present.addAll(getPlaylistContents(shuffleId).trackUris());
+    List<String> toAdd = tracks.subList(offset, tracks.size());
+    journal = WriteJournal.begin(journalFile, shuffleId, offset, tracks.size());
+    addTracksInChunks(shuffleId, toAdd, journal, index -> toAdd
+        .subList(index * MAX_TRACKS_PER_REQUEST,
+            Math.min((index + 1) * MAX_TRACKS_PER_REQUEST, toAdd.size()))
+        .stream().allMatch(present::contains));
+    reconcileShuffleCount(shuffleId, tracks.size());
+    journal.complete();
+  }
 
-    for (int offset = 0; offset < totalTracks; offset += limit) {
-      int finalOffset = offset;
-      futures.add(CompletableFuture.supplyAsync(() -> {
-        try {
-          Paging<PlaylistTrack> playlistTracks = executeWithRetry(
-              spotifyApi.getPlaylistsItems(playlistId).offset(finalOffset).limit(limit).build());
-          return Arrays.stream(playlistTracks.getItems()).map(track -> track.getTrack().getUri())
-              .toList();
-        } catch (Exception e) {
-          LOG.error("Error fetching tracks: {}", e.getMessage());
-          return List.of();
-        }
-      }));
+  // Batches land out of order, so only the final count is checked rather than re-reading items.
+  // A wrong count fails the run: the next run diffs the playlist against its target again, which
+  // trims duplicates and re-adds what is missing. Returns the snapshot_id the playlist ended up at.
+  private String reconcileShuffleCount(String playlistId, int expected) throws Exception {
+    PlaylistHeader playlist = SpotifyJson.playlistHeader(getFreshJson(
+        spotifyApi.getPlaylist(playlistId).fields("snapshot_id,tracks.total").build()));
+    int actual = playlist.tracks().total();
+    if (actual != expected) {
+      throw new IllegalStateException("Shuffle playlist " + playlistId + " has " + actual
+          + " tracks, expected " + expected);
     }
+    LOG.info("Shuffle songs : {}", actual);
+    return playlist.snapshotId();
+  }
+
+
+  private record PlaylistContents(String snapshotId, List<String> trackUris,
+      Map<String, String> artistIds) {
+
+  }
 
-// Combine all async results
-    trackUris.addAll(futures.stream().map(CompletableFuture::join).flatMap(List::stream).toList());
-    return trackUris;
+  private record FetchedSource<T>(Page<T> first, List<T> items) {
+
+  }
+
+  // Only the snapshot, item URIs and artist ids are requested; the playlist object already embeds
+  // the first page of items, so only the pages after it are fetched separately. A failed page
+  // fails the read. A read that came back short, or whose pages disagree on the total because the
+  // playlist changed while it was paged, is returned without a snapshot_id, so it is never cached
+  // as that snapshot.
+  private PlaylistContents getPlaylistContents(String playlistId) throws Exception {
+    int limit = 100; // API limit per request
+    Map<String, String> artistIds = new ConcurrentHashMap<>();
+    PlaylistHeader playlist = SpotifyJson.playlistHeader(getJson(
+        spotifyApi.getPlaylist(playlistId).fields(PLAYLIST_FIELDS).build()), artistIds::put);
+
+    int total = playlist.tracks().total();
+    AtomicBoolean changedWhilePaging = new AtomicBoolean();
+    List<String> trackUris = PAGINATOR.fetchAll(limit, playlist.tracks(), offset -> {
+      Page<String> page = SpotifyJson.trackUriPage(getJson(spotifyApi.getPlaylistsItems(playlistId)
+          .fields(PLAYLIST_ITEM_FIELDS).offset(offset).limit(limit).build()), artistIds::put);
+      if (page.total() != total) {
+        changedWhilePaging.set(true);
+      }
+      return page;
+    });
+
+    if (changedWhilePaging.get() || trackUris.size() != total) {
+      LOG.warn("Playlist {} read {} of {} items{}, not caching it", playlistId, trackUris.size(),
+          total, changedWhilePaging.get() ? " while it changed" : "");
+      return new PlaylistContents(null, trackUris, artistIds);
+    }
+    return new PlaylistContents(playlist.snapshotId(), trackUris, artistIds);
   }
 
-  private static void shuffleThePlaylist() throws Exception {
+  private void shuffleThePlaylist() throws Exception {
 
-    List<String> shufflePlaylistTrackUrisCopy = new ArrayList<>(shufflePlaylistTrackUris);
-    Collections.shuffle(shufflePlaylistTrackUrisCopy);
-    saveListToFile(shufflePlaylistTrackUrisCopy, PLAYLIST_FILE);
-    executeWithRetry(spotifyApi.replacePlaylistsItems(SHUFFLE_ID, new JsonArray()).build());
+    // Shuffled in place; the list view decodes URIs on demand instead of copying the whole set
+    List<String> shuffledTrackUris;
+    try (Metrics.Stage stage = METRICS.stage("shuffle")) {
+      shuffleStrategy.shuffle(shufflePlaylistTrackUris, new Random());
+      shuffledTrackUris = shufflePlaylistTrackUris.asList();
+      TrackListFile.write(playlistFile, shufflePlaylistTrackUris);
+    }
 
-    addTracksInChunks(shufflePlaylistTrackUrisCopy);
+    try (Metrics.Stage stage = METRICS.stage("write")) {
+      if (shuffleIds.size() == 1 && shards.isEmpty()
+          && shuffledTrackUris.size() <= SHARD_SIZE) {
+        rewritePlaylist(shuffleId, shufflePlaylistContents, shuffledTrackUris, journalFile);
+      } else {
+        writeShards(shuffledTrackUris);
+      }
+    }
+  }
+
+  // Spreads the pool over the shard playlists, creating more when it has outgrown them. Only
+  // shards whose members changed are written, all of them concurrently. Shard writes aren't
+  // journaled: a shard left half written no longer matches its recorded snapshot, so the next run
+  // reads it back and writes it again.
+  private void writeShards(List<String> shuffled) throws Exception {
+    List<String> ids = shardIds();
+    int needed = (shuffled.size() + SHARD_SIZE - 1) / SHARD_SIZE;
+    while (ids.size() < needed) {
+      String playlistId = createShardPlaylist(ids.size() + 1);
+      shardContents.put(playlistId, new PlaylistContents(null, List.of(), Map.of()));
+      ids.add(playlistId);
+    }
 
+    Map<String, List<String>> current = new HashMap<>();
+    shardContents.forEach((playlistId, contents) -> current.put(playlistId, contents.trackUris()));
+    List<ShuffleShards.Target> targets = ShuffleShards.assign(shuffled, ids, current, SHARD_SIZE);
+    LOG.info("Shuffling {} tracks into {} shard(s), {} of them changed.", shuffled.size(),
+        targets.size(), targets.stream().filter(ShuffleShards.Target::changed).count());
+
+    List<ShuffleShards.Shard> written = EXECUTOR.map(targets, target -> {
+      PlaylistContents contents = shardContents.get(target.playlistId());
+      String snapshotId = target.changed()
+          ? rewritePlaylist(target.playlistId(), contents, target.trackUris(), null)
+          : contents.snapshotId();
+      return new ShuffleShards.Shard(target.playlistId(), snapshotId, target.trackUris());
+    });
+    shards.save(written);
+  }
 
+  // New shards are private and named after their position
+  private String createShardPlaylist(int number) throws Exception {
+    if (userId == null) {
+      userId = executeWithRetry(spotifyApi.getCurrentUsersProfile().build()).getId();
+    }
+    String playlistId = executeWrite(spotifyApi.createPlaylist(userId, "Shuffle " + number)
+        .public_(false).build()).getId();
+    LOG.info("Created shard playlist {} ({}){}", number, playlistId, logSuffix());
+    updatePlaylistImage(playlistId);
+    return playlistId;
   }
 
-  private static List<String> readListFromFile(String filename) throws IOException {
-      Path filePath = Paths.get(filename);
-      if (!Files.exists(filePath)) {
-        return Collections.emptyList();
+  // Brings a shuffle playlist from its current order to target with as few writes as possible,
+  // chaining each write's snapshot_id into the next so positional removals stay consistent.
+  // Returns the snapshot_id the playlist ends up at. journalPath is null for shards, whose writes
+  // --read-from-disk does not resume.
+  private String rewritePlaylist(String playlistId, PlaylistContents current, List<String> target,
+      String journalPath) throws Exception {
+    // Without a snapshot_id (an incomplete read) positional removals could hit whatever the
+    // playlist holds by now, so it is replaced outright
+    PlaylistDiff diff = current.snapshotId() == null
+        ? PlaylistDiff.replace(target, MAX_TRACKS_PER_REQUEST)
+        : PlaylistDiff.between(current.trackUris(), target, MAX_TRACKS_PER_REQUEST);
+    if (diff.isUnchanged()) {
+      LOG.info("Shuffle playlist {} already up to date.", playlistId);
+      // A journal left by an earlier failed write would otherwise be replayed by --read-from-disk
+      if (journalPath != null) {
+        WriteJournal.discard(journalPath);
       }
-      return Files.readAllLines(filePath);
+      return current.snapshotId();
     }
+    LOG.info("Rewriting shuffle playlist {} with {} write(s), keeping {} track(s) in place.",
+        playlistId, diff.getWrites(), diff.getKeep());
 
-  private static void saveListToFile(List<String> list, String filename) throws IOException {
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-      for (String item : list) {
-        writer.write(item);
-        writer.newLine();
+    String snapshotId = current.snapshotId();
+    if (diff.isReplace()) {
+      executeWithRetry(spotifyApi.replacePlaylistsItems(playlistId,
+          SpotifyJson.toJsonArray(target.subList(0, diff.getKeep()))).build());
+    } else {
+      for (JsonArray removal : diff.getRemovals()) {
+        snapshotId = executeWrite(spotifyApi.removeItemsFromPlaylist(playlistId, removal)
+            .snapshotId(snapshotId).build()).getSnapshotId();
       }
     }
+
+    // Every committed batch is journaled so --read-from-disk can pick up where a failed run stopped
+    WriteJournal journal = journalPath == null ? null
+        : WriteJournal.begin(journalPath, playlistId, diff.getKeep(), target.size());
+    addTracksInChunks(playlistId, target.subList(diff.getKeep(), target.size()), journal,
+        index -> false);
+    String finalSnapshotId = reconcileShuffleCount(playlistId, target.size());
+    if (journal != null) {
+      journal.complete();
+    }
+    return finalSnapshotId;
   }
 
-  private static void updatePlaylistImage() throws Exception {
+  private void updatePlaylistImage(String playlistId) throws Exception {
     InputStream resourceAsStream = Main.class.getClassLoader()
         .getResourceAsStream("playlist_compressed.jpg");
     if (resourceAsStream == null) {
@@ -399,51 +933,46 @@ public class Main {
     String base64String = Base64.getEncoder().encodeToString(fileBytes);
 
     executeWithRetry(
-        spotifyApi.uploadCustomPlaylistCoverImage(SHUFFLE_ID).image_data(base64String).build());
+        spotifyApi.uploadCustomPlaylistCoverImage(playlistId).image_data(base64String).build());
 
   }
 
-  private static List<Artist> listArtists() throws Exception {
+  private List<Artist> listArtists() throws Exception {
     List<Artist> artistData = JsonFileDb.loadArtists();
-    PagingCursorbased<se.michaelthelin.spotify.model_objects.specification.Artist> artistPaging;
-    String after = null;
-
-    Scanner scanner = new Scanner(System.in);
 
-    do {
+    // Followed artists are cursor-paged, so they can only be walked one page at a time
+    List<Resource> followedArtists = PAGINATOR.walkCursor(after -> {
       GetUsersFollowedArtistsRequest.Builder request = spotifyApi.getUsersFollowedArtists(ModelObjectType.ARTIST);
       if (after != null) {
         request.after(after);
       }
-      artistPaging = executeWithRetry(
-          request.limit(PAGING_LIMIT)
-              .build()
-      );
-
-      for (se.michaelthelin.spotify.model_objects.specification.Artist followedArtist : artistPaging.getItems()) {
-        Artist artist = new Artist();
-        artist.setName(followedArtist.getName());
-        artist.setId(followedArtist.getId());
-
-        if (artistData.contains(artist) || artist.getId().equals(SHUFFLE_ID)) {
-          continue;
-        }
+      return SpotifyJson.followedArtistsPage(getJson(request.limit(PAGING_LIMIT).build()));
+    });
 
-        // Prompt the user for "keep" input
-        LOG.info("Artist: {}", artist.getName());
-        // Prompt the user for "add to shuffle" input
-        LOG.info("Add this artist to shuffle? (y/n): ");
-        String shuffleResponse = scanner.nextLine().trim().toLowerCase();
-        artist.setIncludeInShuffle(shuffleResponse.equals("y"));
+    Scanner scanner = new Scanner(System.in);
+    // Ids asked about in this listing, which data.json only records once they are saved
+    Set<String> listed = new HashSet<>();
 
-        // Add to artist data
-        artistData.add(artist);
+    for (Resource followedArtist : followedArtists) {
+      Artist artist = new Artist();
+      artist.setName(followedArtist.name());
+      artist.setId(followedArtist.id());
 
-        LOG.info("-----------------------------"); // Just for readability
+      if (JsonFileDb.hasArtist(artist.getId()) || artist.getId().equals(shuffleId)
+          || !listed.add(artist.getId())) {
+        continue;
       }
 
-      after = artistPaging.getNext();
-    } while (artistPaging.getItems().length > 0 && after != null);
+      // Prompt the user for "keep" input
+      LOG.info("Artist: {}", artist.getName());
+      // Prompt the user for "add to shuffle" input
+      artist.setIncludeInShuffle(askToInclude(scanner, "artist"));
+
+      // Add to artist data
+      artistData.add(artist);
+
+      LOG.info("-----------------------------"); // Just for readability
+    }
 
     // Save updated playlist data to file
     JsonFileDb.saveArtists(artistData);
@@ -452,107 +981,264 @@ public class Main {
 
   }
 
-  private static List<String> getArtistTopTracks(String artistId) throws Exception {
-    List<Track> allTracks = Collections.synchronizedList(new ArrayList<>()); // Thread-safe list
+  private List<String> getArtistTopTracks(Artist artist) throws Exception {
+    // **Step 1: Fetch ALL albums, unless the artist's album list is still fresh in the cache**
+    String albumsKey = artist.getId() + "|" + artist.getIncludeGroups();
+    List<String> albumIds = albumCache.getArtistAlbums(albumsKey);
+    if (albumIds == null) {
+      albumIds = PAGINATOR.fetchAll(PAGING_LIMIT, offset -> SpotifyJson.idPage(getJson(
+          spotifyApi.getArtistsAlbums(artist.getId())
+              .setQueryParameter("include_groups", artist.getIncludeGroups())
+              .limit(PAGING_LIMIT).offset(offset).build())));
+      albumCache.putArtistAlbums(albumsKey, albumIds);
+    }
 
-    // **Step 1: Fetch ALL albums**
-    List<AlbumSimplified> albums = new ArrayList<>();
-    Paging<AlbumSimplified> albumPaging;
-    int offset = 0;
+    // **Step 2: Collect ALL track IDs from albums**
+    Map<String, List<String>> tracksByAlbum = getTracksFromAlbums(albumIds);
+    List<String> trackIds = albumIds.stream()
+        .flatMap(albumId -> tracksByAlbum.getOrDefault(albumId, List.of()).stream()).toList();
+
+    // **Step 3: Stream popularity into a top-K heap, fetching only tracks without a fresh value**
+    TopK topTracks = new TopK(artist.getTopTracks());
+    List<String> missingIds = new ArrayList<>();
+    for (String trackId : trackIds) {
+      Integer popularity = albumCache.getPopularity(trackId);
+      if (popularity != null) {
+        topTracks.offer(trackId, popularity);
+      } else {
+        missingIds.add(trackId);
+      }
+    }
 
-    do {
-      albumPaging = executeWithRetry(
-          spotifyApi.getArtistsAlbums(artistId).setQueryParameter("include_groups", "album,single")
-              .limit(PAGING_LIMIT).offset(offset).build());
+    List<String[]> batches = new ArrayList<>();
+    for (int i = 0; i < missingIds.size(); i += PAGING_LIMIT) {
+      int end = Math.min(i + PAGING_LIMIT, missingIds.size());
+      batches.add(missingIds.subList(i, end).toArray(new String[0]));
+    }
 
-      albums.addAll(Arrays.asList(albumPaging.getItems()));
-      offset += PAGING_LIMIT;
-    } while (albumPaging.getNext() != null);
+    EXECUTOR.map(batches, batchIds -> {
+      SpotifyJson.severalTracks(getJson(spotifyApi.getSeveralTracks(batchIds).build()),
+          (trackId, popularity) -> {
+            albumCache.putPopularity(trackId, popularity);
+            topTracks.offer(trackId, popularity);
+          });
+      return null;
+    });
+
+    // **Step 4: Most popular first**
+    List<String> uris = topTracks.toUris();
+    for (String uri : uris) {
+      artists.put(uri, artist.getId());
+    }
+    return uris;
+  }
 
-    // **Step 2: Collect ALL track IDs from albums**
-    List<String> trackIds = Collections.synchronizedList(new ArrayList<>());
-    List<CompletableFuture<Void>> albumFutures = new ArrayList<>();
+  // Album track lists never change, so cached albums cost nothing. The rest are looked up 20 at a
+  // time, and only albums longer than their embedded first page need further track requests.
+  private Map<String, List<String>> getTracksFromAlbums(List<String> albumIds)
+      throws Exception {
+    Map<String, List<String>> tracksByAlbum = new ConcurrentHashMap<>();
+    List<String> missingIds = new ArrayList<>();
+    for (String albumId : albumIds) {
+      List<String> cached = albumCache.getAlbumTracks(albumId);
+      if (cached != null) {
+        tracksByAlbum.put(albumId, cached);
+      } else {
+        missingIds.add(albumId);
+      }
+    }
 
-    for (AlbumSimplified album : albums) {
-      albumFutures.add(CompletableFuture.runAsync(() -> {
-        try {
-          List<String> albumTrackIds = getTracksFromAlbum(album.getId());
-          synchronized (trackIds) {
-            trackIds.addAll(albumTrackIds);
-          }
-        } catch (Exception e) {
-          LOG.error("Error fetching tracks from album {}: {}", album.getName(), e.getMessage());
-        }
-      }));
+    List<String[]> batches = new ArrayList<>();
+    for (int i = 0; i < missingIds.size(); i += MAX_ALBUMS_PER_REQUEST) {
+      int end = Math.min(i + MAX_ALBUMS_PER_REQUEST, missingIds.size());
+      batches.add(missingIds.subList(i, end).toArray(new String[0]));
     }
 
-    CompletableFuture.allOf(albumFutures.toArray(new CompletableFuture[0])).join();
+    EXECUTOR.map(batches, batchIds -> {
+      for (AlbumTracks album : SpotifyJson.severalAlbums(
+          getJson(spotifyApi.getSeveralAlbums(batchIds).build()))) {
+        tracksByAlbum.put(album.id(), getTracksFromAlbum(album));
+      }
+      return null;
+    });
+    return tracksByAlbum;
+  }
 
-    List<CompletableFuture<Void>> trackFutures = new ArrayList<>();
+  // Uses the track page embedded in the album and only pages further for long albums
+  private List<String> getTracksFromAlbum(AlbumTracks album) throws Exception {
+    List<String> cached = albumCache.getAlbumTracks(album.id());
+    if (cached != null) {
+      return cached;
+    }
 
-    for (int i = 0; i < trackIds.size(); i += PAGING_LIMIT) {
-      int end = Math.min(i + PAGING_LIMIT, trackIds.size());
-      String[] batchIds = trackIds.subList(i, end).toArray(new String[0]);
+    List<String> trackIds = PAGINATOR.fetchAll(PAGING_LIMIT, album.trackIds(),
+        offset -> SpotifyJson.idPage(getJson(
+            spotifyApi.getAlbumsTracks(album.id()).limit(PAGING_LIMIT).offset(offset).build())));
 
-      trackFutures.add(CompletableFuture.runAsync(() -> {
-        try {
-          Track[] tracks = executeWithRetry(spotifyApi.getSeveralTracks(batchIds).build());
-          synchronized (allTracks) {
-            allTracks.addAll(Arrays.asList(tracks));
-          }
-        } catch (Exception e) {
-          LOG.error("Error fetching track details: {}", e.getMessage());
-        }
-      }));
+    albumCache.putAlbumTracks(album.id(), trackIds);
+    return trackIds;
+  }
+  
+  private void addUserAlbums() throws  Exception {
+    List<AlbumTracks> savedAlbums = fetchUnlessUnchanged("albums", PAGING_LIMIT,
+        offset -> SpotifyJson.savedAlbumPage(getJson(
+            spotifyApi.getCurrentUsersSavedAlbums().limit(PAGING_LIMIT).offset(offset).build())));
+
+    // Saved albums already carry their first track page, so most need no extra request at all
+    List<List<String>> albumTracks = EXECUTOR.map(savedAlbums, this::getTracksFromAlbum);
+
+    for (int i = 0; i < savedAlbums.size(); i++) {
+      AlbumTracks savedAlbum = savedAlbums.get(i);
+      List<String> tracks = albumTracks.get(i);
+      for (String trackId : tracks) {
+        artists.put(trackId, savedAlbum.artistId());
+      }
+      addToShuffleList(tracks.stream().map(uri -> "spotify:track:" + uri).toList());
+      LOG.info("Added {} tracks from album: {} - {}", tracks.size(), savedAlbum.name(),
+          savedAlbum.artistName());
+    }
+  }
+
+  // Saved tracks and albums are listed newest first, so if the first page and the total are what
+  // the previous daemon cycle saw, nothing was added or removed and the rest needn't be paged again
+  @SuppressWarnings("unchecked")
+  private <T> List<T> fetchUnlessUnchanged(String source, int limit,
+      Paginator.PageFetcher<T> fetcher) throws Exception {
+    Page<T> first = fetcher.fetch(0);
+    FetchedSource<T> previous = (FetchedSource<T>) fetchedSources.get(source);
+    if (previous != null && previous.first().total() == first.total()
+        && previous.first().items().equals(first.items())) {
+      LOG.debug("Source {} unchanged, reusing {} items", source, previous.items().size());
+      return previous.items();
     }
+    List<T> items = PAGINATOR.fetchAll(limit, first, fetcher);
+    fetchedSources.put(source, new FetchedSource<>(first, items));
+    return items;
+  }
 
-    CompletableFuture.allOf(trackFutures.toArray(new CompletableFuture[0])).join();
+  private <T> T executeWithRetry(IRequest<T> request) throws Exception {
+    return executeWithRetry(request, request::execute, false, true);
+  }
 
-    // **Step 4: Sort by popularity and return top 25**
-    return allTracks.stream().sorted(Comparator.comparingInt(Track::getPopularity).reversed())
-        .limit(25).map(Track::getUri).toList();
+  // For writes that aren't idempotent, such as appends: a 5xx or timeout may arrive after the write
+  // landed, so only rejections known to happen before it (429, 401) are retried
+  private <T> T executeWrite(IRequest<T> request) throws Exception {
+    return executeWithRetry(request, request::execute, false, false);
   }
 
-  private static List<String> getTracksFromAlbum(String albumId) throws Exception {
-    Paging<TrackSimplified> trackPaging = executeWithRetry(
-        spotifyApi.getAlbumsTracks(albumId).limit(PAGING_LIMIT).build());
+  // Raw response body for reads that are parsed by SpotifyJson instead of into model objects.
+  // Identical reads (same URI and token) share one in-flight request and are memoized for the run,
+  // within the READ_MEMO_SIZE bound.
+  private String getJson(IRequest<?> request) throws Exception {
+    return READS.get(requestKey(request), () -> getFreshJson(request));
+  }
 
-    return Arrays.stream(trackPaging.getItems()).map(TrackSimplified::getId).toList();
+  // Bypasses the memoized reads, for state this run changes itself such as the shuffle playlist.
+  // Reads are idempotent, so they may be hedged.
+  private String getFreshJson(IRequest<?> request) throws Exception {
+    return executeWithRetry(request, request::getJson, HEDGER != null, true);
   }
-  
-  private static void addUserAlbums() throws  Exception {
-    int offset = 0;
-    Paging<SavedAlbum> savedAlbums;
-    do {
-      savedAlbums = executeWithRetry(
-          spotifyApi.getCurrentUsersSavedAlbums().limit(PAGING_LIMIT).offset(offset).build());
-
-      for (SavedAlbum savedAlbum : savedAlbums.getItems()) {
-        List<String> tracks = getTracksFromAlbum(savedAlbum.getAlbum().getId());
-        shufflePlaylistTrackUris.addAll(tracks.stream().map(uri -> "spotify:track:" + uri).toList());
-        LOG.info("Added {} tracks from album: {} - {}", tracks.size(), savedAlbum.getAlbum().getName(),
-            savedAlbum.getAlbum().getArtists()[0].getName());
+
+  // Path with ids replaced, e.g. /v1/playlists/{id}/tracks, so latencies group per endpoint
+  private static String endpointOf(IRequest<?> request) {
+    return ID_SEGMENT.matcher(request.getUri().getPath()).replaceAll("/{id}");
+  }
+
+  // Times a single attempt, failed ones included. Bytes are only known for raw JSON reads; the
+  // typed requests hand back model objects. Characters are counted as a close stand-in for bytes.
+  // Runs inside the permit, so a successful hedged call also gives the hedger its latency without
+  // the time spent waiting for the permit.
+  private static <T> T measure(String endpoint, Callable<T> call, boolean hedged)
+      throws Exception {
+    long start = System.nanoTime();
+    T result = null;
+    try {
+      result = call.call();
+      if (hedged) {
+        HEDGER.record(endpoint, System.nanoTime() - start);
       }
+      return result;
+    } finally {
+      METRICS.recordRequest(endpoint, System.nanoTime() - start,
+          result instanceof String body ? body.length() : 0);
+    }
+  }
+
+  private static String requestKey(IRequest<?> request) {
+    if (CATALOG_PATH.matcher(request.getUri().getPath()).lookingAt()) {
+      return request.getUri().toString();
+    }
+    return request.getUri() + " " + authorizationOf(request);
+  }
+
+  private static String authorizationOf(IRequest<?> request) {
+    return request.getHeaders().stream().filter(Main::isAuthorization)
+        .map(Header::getValue).findFirst().orElse("");
+  }
 
-      offset += PAGING_LIMIT;
-    } while (savedAlbums.getNext() != null);
+  private static boolean isAuthorization(Header header) {
+    return header.getName().equalsIgnoreCase(AUTHORIZATION);
   }
 
-  private static <T> T executeWithRetry(IRequest<T> request) throws Exception {
-    int maxRetries = 10;
-    int attempt = 0;
+  private <T> T executeWithRetry(IRequest<?> request, Callable<T> call, boolean hedged,
+      boolean retryServerErrors) throws Exception {
+    int serverErrors = 0;
+    int rateLimited = 0;
+    boolean reauthorized = false;
+    String endpoint = endpointOf(request);
+    Callable<T> measured = () -> measure(endpoint, call, hedged);
 
-    while (attempt < maxRetries) {
+    while (true) {
+      RATE_LIMITER.acquire();
       try {
-        return request.execute();
+        T result = hedged
+            ? HEDGER.call(endpoint, sent -> EXECUTOR.withPermit(() -> {
+              sent.run();
+              return measured.call();
+            }), () -> {
+              RATE_LIMITER.acquire(); // The duplicate is a real request and pays for its own token
+              return EXECUTOR.withPermit(measured);
+            })
+            : EXECUTOR.withPermit(measured);
+        RATE_LIMITER.onSuccess();
+        return result;
       } catch (TooManyRequestsException e) {
+        // Pause every thread, not just this one; the next acquire waits out Retry-After, so no
+        // backoff is added on top of it
         int retryAfter = e.getRetryAfter();
+        RATE_LIMITER.onRateLimited(retryAfter);
+        METRICS.recordRateLimited(endpoint, retryAfter);
+        if (HEDGER != null) {
+          HEDGER.onRateLimited();
+        }
+        if (++rateLimited > MAX_RATE_LIMITED_RETRIES) {
+          throw e;
+        }
         LOG.debug("Rate limited. Retrying after {} seconds...", retryAfter);
-        Thread.sleep(retryAfter * 1000L);
+        continue;
+      } catch (UnauthorizedException e) {
+        // Replayed once with whatever token the single refresh produced. Token requests
+        // themselves use Basic auth and are never replayed.
+        String authorization = authorizationOf(request);
+        if (reauthorized || !authorization.startsWith(BEARER)) {
+          throw e;
+        }
+        reauthorized = true;
+        String accessToken = tokens.refreshAfterUnauthorized(
+            authorization.substring(BEARER.length()));
+        // Built requests carry their headers in a mutable list, so the replay can reuse this one
+        request.getHeaders().replaceAll(header -> isAuthorization(header)
+            ? new BasicHeader(AUTHORIZATION, BEARER + accessToken) : header);
+        continue;
+      } catch (InternalServerErrorException | BadGatewayException
+               | ServiceUnavailableException e) {
+        if (!retryServerErrors || serverErrors >= MAX_SERVER_ERROR_RETRIES) {
+          throw e;
+        }
+        LOG.debug("Server error: {}. Retrying...", e.getMessage());
+        Thread.sleep(RateLimiter.backoffMillis(serverErrors++));
       }
-      attempt++;
     }
-    throw new RuntimeException("Max retry attempts exceeded");
   }
 
 
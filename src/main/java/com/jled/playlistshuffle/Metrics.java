@@ -0,0 +1,214 @@
+package com.jled.playlistshuffle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Per-endpoint request metrics and per-stage wall time for one run, written out at the end as a
+ * JSON report and a Prometheus text file.
+ *
+ * <p>Latencies go into a log-linear histogram in the style of HdrHistogram: 16 sub-buckets per
+ * power of two, so any recorded value is within about 6% of its bucket's bounds and memory stays
+ * fixed no matter how many requests are made.
+ */
+public class Metrics {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+  private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+  private final Map<String, Long> stageNanos = Collections.synchronizedMap(new LinkedHashMap<>());
+  private final long startNanos = System.nanoTime();
+
+  // Stages are closed with try-with-resources; time is added, so a stage may be entered repeatedly
+  public interface Stage extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+
+  public Stage stage(String name) {
+    long start = System.nanoTime();
+    return () -> stageNanos.merge(name, System.nanoTime() - start, Long::sum);
+  }
+
+  public void recordRequest(String endpoint, long nanos, long bytes) {
+    endpoint(endpoint).recordRequest(nanos, bytes);
+  }
+
+  public void recordRateLimited(String endpoint, int retryAfterSeconds) {
+    endpoint(endpoint).recordRateLimited(retryAfterSeconds);
+  }
+
+  public void writeJson(Path path) throws IOException {
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("wallSeconds", seconds(System.nanoTime() - startNanos));
+    Map<String, Object> stages = new LinkedHashMap<>();
+    stageNanos.forEach((name, nanos) -> stages.put(name, seconds(nanos)));
+    report.put("stagesSeconds", stages);
+    Map<String, Object> byEndpoint = new TreeMap<>();
+    endpoints.forEach((name, endpoint) -> byEndpoint.put(name, endpoint.toReport()));
+    report.put("endpoints", byEndpoint);
+
+    write(path, mapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+  }
+
+  public void writePrometheus(Path path) throws IOException {
+    StringBuilder out = new StringBuilder();
+    out.append("# TYPE shuffle_run_seconds gauge\n");
+    out.append("shuffle_run_seconds ").append(seconds(System.nanoTime() - startNanos))
+        .append('\n');
+    out.append("# TYPE shuffle_stage_seconds gauge\n");
+    stageNanos.forEach((name, nanos) -> out.append("shuffle_stage_seconds{stage=\"")
+        .append(name).append("\"} ").append(seconds(nanos)).append('\n'));
+
+    Map<String, Endpoint> sorted = new TreeMap<>(endpoints);
+    out.append("# TYPE spotify_request_duration_seconds summary\n");
+    sorted.forEach((name, endpoint) -> endpoint.appendSummary(out, name));
+    appendCounter(out, sorted, "spotify_response_bytes_total", endpoint -> endpoint.bytes);
+    appendCounter(out, sorted, "spotify_rate_limited_total", endpoint -> endpoint.rateLimited);
+    appendCounter(out, sorted, "spotify_retry_after_seconds_total",
+        endpoint -> endpoint.retryAfterSeconds);
+
+    write(path, out.toString());
+  }
+
+  private Endpoint endpoint(String name) {
+    return endpoints.computeIfAbsent(name, key -> new Endpoint());
+  }
+
+  private static void appendCounter(StringBuilder out, Map<String, Endpoint> endpoints,
+      String metric, ToLongFunction<Endpoint> value) {
+    out.append("# TYPE ").append(metric).append(" counter\n");
+    endpoints.forEach((name, endpoint) -> {
+      long count;
+      synchronized (endpoint) {
+        count = value.applyAsLong(endpoint);
+      }
+      out.append(metric).append("{endpoint=\"").append(name).append("\"} ").append(count)
+          .append('\n');
+    });
+  }
+
+  private static void write(Path path, String content) throws IOException {
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    Files.writeString(tmp, content);
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static double seconds(long nanos) {
+    return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+  }
+
+  private static class Endpoint {
+
+    private final Histogram latencyMicros = new Histogram();
+    private long count;
+    private long totalNanos;
+    private long bytes;
+    private long rateLimited;
+    private long retryAfterSeconds;
+
+    synchronized void recordRequest(long nanos, long responseBytes) {
+      count++;
+      totalNanos += nanos;
+      bytes += responseBytes;
+      latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    synchronized void recordRateLimited(int retryAfter) {
+      rateLimited++;
+      retryAfterSeconds += retryAfter;
+    }
+
+    synchronized Map<String, Object> toReport() {
+      Map<String, Object> report = new LinkedHashMap<>();
+      report.put("requests", count);
+      report.put("bytes", bytes);
+      report.put("rateLimited", rateLimited);
+      report.put("retryAfterSeconds", retryAfterSeconds);
+      report.put("totalSeconds", seconds(totalNanos));
+      Map<String, Object> latency = new LinkedHashMap<>();
+      for (double quantile : QUANTILES) {
+        latency.put("p" + Math.round(quantile * 100), latencyMicros.quantile(quantile) / 1000.0);
+      }
+      latency.put("max", latencyMicros.max() / 1000.0);
+      report.put("latencyMillis", latency);
+      return report;
+    }
+
+    synchronized void appendSummary(StringBuilder out, String name) {
+      for (double quantile : QUANTILES) {
+        out.append("spotify_request_duration_seconds{endpoint=\"").append(name)
+            .append("\",quantile=\"").append(quantile).append("\"} ")
+            .append(latencyMicros.quantile(quantile) / 1_000_000.0).append('\n');
+      }
+      out.append("spotify_request_duration_seconds_sum{endpoint=\"").append(name).append("\"} ")
+          .append(seconds(totalNanos)).append('\n');
+      out.append("spotify_request_duration_seconds_count{endpoint=\"").append(name).append("\"} ")
+          .append(count).append('\n');
+    }
+  }
+
+  // Values below 32 get a bucket each; above that every power of two is split into 16 buckets
+  private static class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int HALF = 1 << (SUB_BUCKET_BITS - 1);
+
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 2) * HALF];
+    private long total;
+    private long max;
+
+    void record(long value) {
+      value = Math.max(value, 0);
+      counts[index(value)]++;
+      total++;
+      max = Math.max(max, value);
+    }
+
+    long max() {
+      return max;
+    }
+
+    // Upper bound of the bucket holding the given quantile, capped at the largest value seen
+    long quantile(double quantile) {
+      if (total == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(quantile * total));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(max, upperBound(i));
+        }
+      }
+      return max;
+    }
+
+    private static int index(long value) {
+      int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+      return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    private static long upperBound(int index) {
+      if (index < 2 * HALF) {
+        return index;
+      }
+      int shift = index / HALF - 1;
+      long subBucket = index - (long) shift * HALF;
+      return ((subBucket + 1) << shift) - 1;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.jled.playlistshuffle;
+
+import com.jled.playlistshuffle.SpotifyJson.Page;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads every page of a Spotify collection. Offset-based endpoints report their total on the first
+ * page, so all remaining pages are requested concurrently; cursor-based ones can only be walked.
+ */
+public class Paginator {
+
+  @FunctionalInterface
+  public interface PageFetcher<T> {
+
+    Page<T> fetch(int offset) throws Exception;
+  }
+
+  @FunctionalInterface
+  public interface CursorFetcher<T> {
+
+    Page<T> fetch(String after) throws Exception;
+  }
+
+  private final SpotifyExecutor executor;
+
+  public Paginator(SpotifyExecutor executor) {
+    this.executor = executor;
+  }
+
+  public <T> List<T> fetchAll(int limit, PageFetcher<T> fetcher) throws Exception {
+    return fetchAll(limit, fetcher.fetch(0), fetcher);
+  }
+
+  // For responses that already embed the first page, e.g. a playlist object and its tracks
+  public <T> List<T> fetchAll(int limit, Page<T> first, PageFetcher<T> fetcher)
+      throws Exception {
+    List<Integer> offsets = new ArrayList<>();
+    for (int offset = limit; offset < first.total(); offset += limit) {
+      offsets.add(offset);
+    }
+
+    List<T> items = new ArrayList<>(first.total());
+    items.addAll(first.items());
+    for (Page<T> page : executor.map(offsets, fetcher::fetch)) {
+      items.addAll(page.items());
+    }
+    return items;
+  }
+
+  public <T> List<T> walkCursor(CursorFetcher<T> fetcher) throws Exception {
+    List<T> items = new ArrayList<>();
+    String after = null;
+    Page<T> page;
+    do {
+      page = fetcher.fetch(after);
+      items.addAll(page.items());
+      after = page.after();
+    } while (page.next() != null && after != null);
+    return items;
+  }
+}
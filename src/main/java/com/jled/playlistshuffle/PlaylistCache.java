@@ -0,0 +1,82 @@
+package com.jled.playlistshuffle;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of playlist track URIs, and the lead artist of each, keyed by playlist id. An entry
+ * is only valid for the snapshot_id it was fetched at, so a playlist is re-paged exactly when
+ * Spotify reports a change. Only playlists looked up during the current run are saved, so ones
+ * that were unfollowed or left out of the shuffle drop out of the file.
+ */
+public class PlaylistCache {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  public record Entry(String snapshotId, List<String> trackUris, Map<String, String> artistIds) {
+
+  }
+
+  private final Path path;
+  private final Map<String, Entry> entries;
+  // Playlists looked up since the run started; shared by every account of a batch run
+  private final Set<String> used = ConcurrentHashMap.newKeySet();
+
+  private PlaylistCache(Path path, Map<String, Entry> entries) {
+    this.path = path;
+    this.entries = entries;
+  }
+
+  public static PlaylistCache load(String filename) throws IOException {
+    Path path = Paths.get(filename);
+    if (!Files.exists(path)) {
+      return new PlaylistCache(path, new ConcurrentHashMap<>());
+    }
+    Map<String, Entry> entries = mapper.readValue(path.toFile(), new TypeReference<>() {});
+    return new PlaylistCache(path, new ConcurrentHashMap<>(entries));
+  }
+
+  // Returns the entry if it was fetched at the given snapshot, otherwise null. Entries written
+  // before artist ids were cached count as stale so they are re-paged once.
+  public Entry get(String playlistId, String snapshotId) {
+    used.add(playlistId);
+    Entry entry = entries.get(playlistId);
+    if (entry == null || entry.artistIds() == null || snapshotId == null
+        || !snapshotId.equals(entry.snapshotId())) {
+      return null;
+    }
+    return entry;
+  }
+
+  public void put(String playlistId, String snapshotId, List<String> trackUris,
+      Map<String, String> artistIds) {
+    used.add(playlistId);
+    if (snapshotId != null) {
+      entries.put(playlistId, new Entry(snapshotId, List.copyOf(trackUris), Map.copyOf(artistIds)));
+    }
+  }
+
+  // Starts the next run of a long-running process, e.g. a daemon cycle
+  public void startRun() {
+    used.clear();
+  }
+
+  // Written to a temp file first so an interrupted save never leaves a truncated cache behind
+  public synchronized void save() throws IOException {
+    entries.keySet().retainAll(used);
+    File tmp = new File(path + ".tmp");
+    mapper.writeValue(tmp, entries);
+    Files.move(tmp.toPath(), path, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+}
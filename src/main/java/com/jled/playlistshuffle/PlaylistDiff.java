@@ -0,0 +1,104 @@
+package com.jled.playlistshuffle;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans the cheapest set of playlist writes that turns the current item order into the target one.
+ *
+ * <p>Either the common prefix is kept, the stale tail removed by position and the new tail
+ * appended, or the playlist is replaced with the first chunk of the target and the rest appended.
+ * Both keep the playlist populated the whole time; whichever needs fewer requests wins. Items
+ * without a track have no URI to remove them by, so a tail holding one is always replaced.
+ */
+public class PlaylistDiff {
+
+  private final int keep;
+  private final boolean replace;
+  private final List<JsonArray> removals;
+  private final int writes;
+
+  private PlaylistDiff(int keep, boolean replace, List<JsonArray> removals, int writes) {
+    this.keep = keep;
+    this.replace = replace;
+    this.removals = removals;
+    this.writes = writes;
+  }
+
+  public static PlaylistDiff between(List<String> current, List<String> target, int chunkSize) {
+    int prefix = 0;
+    int max = Math.min(current.size(), target.size());
+    while (prefix < max && current.get(prefix).equals(target.get(prefix))) {
+      prefix++;
+    }
+
+    int prefixWrites = chunks(current.size() - prefix, chunkSize)
+        + chunks(target.size() - prefix, chunkSize);
+    PlaylistDiff replace = replace(target, chunkSize);
+
+    boolean removable = !current.subList(prefix, current.size()).contains(SpotifyJson.UNAVAILABLE);
+    if (removable && prefixWrites <= replace.writes) {
+      return new PlaylistDiff(prefix, false, tailRemovals(current, prefix, chunkSize),
+          prefixWrites);
+    }
+    return replace;
+  }
+
+  // For a playlist whose current items aren't known for certain, e.g. a read without a snapshot_id
+  // to pin positional removals to
+  public static PlaylistDiff replace(List<String> target, int chunkSize) {
+    return new PlaylistDiff(Math.min(chunkSize, target.size()), true, List.of(),
+        1 + chunks(Math.max(0, target.size() - chunkSize), chunkSize));
+  }
+
+  // Removal batches for everything after the kept prefix, last chunk first so that the positions
+  // of the remaining batches are unaffected by the ones already applied
+  private static List<JsonArray> tailRemovals(List<String> current, int from, int chunkSize) {
+    List<JsonArray> batches = new ArrayList<>();
+    for (int end = current.size(); end > from; end -= chunkSize) {
+      int start = Math.max(from, end - chunkSize);
+      Map<String, JsonArray> positionsByUri = new LinkedHashMap<>();
+      for (int i = start; i < end; i++) {
+        positionsByUri.computeIfAbsent(current.get(i), uri -> new JsonArray()).add(i);
+      }
+      JsonArray batch = new JsonArray();
+      positionsByUri.forEach((uri, positions) -> {
+        JsonObject item = new JsonObject();
+        item.addProperty("uri", uri);
+        item.add("positions", positions);
+        batch.add(item);
+      });
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  private static int chunks(int items, int chunkSize) {
+    return (items + chunkSize - 1) / chunkSize;
+  }
+
+  // Number of leading target items already in place once the replace/removals are applied
+  public int getKeep() {
+    return keep;
+  }
+
+  public boolean isReplace() {
+    return replace;
+  }
+
+  public List<JsonArray> getRemovals() {
+    return removals;
+  }
+
+  public int getWrites() {
+    return writes;
+  }
+
+  public boolean isUnchanged() {
+    return writes == 0;
+  }
+}
@@ -0,0 +1,91 @@
+package com.jled.playlistshuffle;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide token bucket shared by every Spotify request.
+ *
+ * <p>The refill rate adapts AIMD-style: it creeps up additively on success and is halved when
+ * Spotify answers 429. A 429 also pauses the whole bucket until its Retry-After has passed, so
+ * every thread backs off together instead of only the one that was rejected.
+ */
+public class RateLimiter {
+
+  private static final double MIN_RATE = 0.5;
+  private static final double ADDITIVE_INCREASE = 1.0;
+  private static final double MULTIPLICATIVE_DECREASE = 0.5;
+  private static final long BASE_BACKOFF_MILLIS = 250;
+  private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+  private final double maxRate;
+  private final double burst;
+
+  private double rate;
+  private double tokens;
+  private long lastRefillNanos = System.nanoTime();
+  private long pausedUntilNanos = lastRefillNanos;
+
+  public RateLimiter(double maxRate, double burst) {
+    this.maxRate = maxRate;
+    this.burst = burst;
+    this.rate = maxRate;
+    this.tokens = burst;
+  }
+
+  // Blocks until a permit is available and no global pause is in effect
+  public void acquire() throws InterruptedException {
+    while (true) {
+      long waitNanos;
+      synchronized (this) {
+        long now = System.nanoTime();
+        refill(now);
+        if (now - pausedUntilNanos < 0) {
+          waitNanos = pausedUntilNanos - now;
+        } else if (tokens >= 1) {
+          tokens -= 1;
+          return;
+        } else {
+          waitNanos = (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+      }
+      TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, 1));
+    }
+  }
+
+  // Additive increase: roughly one extra permit per second for every second of clean traffic
+  public synchronized void onSuccess() {
+    rate = Math.min(maxRate, rate + ADDITIVE_INCREASE / rate);
+  }
+
+  // Multiplicative decrease plus a global pause; 429s that land inside an existing pause come from
+  // requests that were already in flight and don't shrink the rate again
+  public synchronized void onRateLimited(int retryAfterSeconds) {
+    long now = System.nanoTime();
+    boolean alreadyPaused = now - pausedUntilNanos < 0;
+    long pauseNanos = TimeUnit.SECONDS.toNanos(Math.max(retryAfterSeconds, 1));
+    if (now + pauseNanos - pausedUntilNanos > 0) {
+      pausedUntilNanos = now + pauseNanos;
+    }
+    tokens = 0;
+    if (!alreadyPaused) {
+      rate = Math.max(MIN_RATE, rate * MULTIPLICATIVE_DECREASE);
+    }
+  }
+
+  public synchronized double getRate() {
+    return rate;
+  }
+
+  // Full-jitter exponential backoff so retrying threads don't all wake up at the same instant
+  public static long backoffMillis(int attempt) {
+    long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  private void refill(long now) {
+    double elapsedSeconds = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+    tokens = Math.min(burst, tokens + elapsedSeconds * rate);
+    lastRefillNanos = now;
+  }
+}
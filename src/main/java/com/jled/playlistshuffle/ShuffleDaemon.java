@@ -0,0 +1,166 @@
+package com.jled.playlistshuffle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs shuffle cycles on a fixed schedule in one long-lived process. Cycles never overlap: the
+ * schedule and manual triggers share a single worker thread and the next scheduled cycle starts
+ * one interval after the previous one finished.
+ *
+ * <p>A loopback-only HTTP endpoint offers {@code GET /status} and {@code POST /run}, which queues
+ * a cycle right away unless one is already running or queued.
+ */
+public class ShuffleDaemon implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ShuffleDaemon.class);
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  @FunctionalInterface
+  public interface Cycle {
+
+    // Returns the number of tracks written to the shuffle playlist
+    int run(int cycle) throws Exception;
+  }
+
+  private final Cycle cycle;
+  private final Duration interval;
+  private final HttpServer server;
+  private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(
+      r -> new Thread(r, "shuffle-daemon"));
+  private final AtomicBoolean queued = new AtomicBoolean();
+  private final CountDownLatch closed = new CountDownLatch(1);
+
+  private ScheduledFuture<?> next;
+  private boolean running;
+  private int cycles;
+  private Instant lastStartedAt;
+  private Instant lastFinishedAt;
+  private int lastTrackCount;
+  private String lastError;
+
+  public ShuffleDaemon(Cycle cycle, Duration interval, int port) throws IOException {
+    this.cycle = cycle;
+    this.interval = interval;
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/status", this::handleStatus);
+    server.createContext("/run", this::handleRun);
+  }
+
+  public void start() {
+    server.start();
+    schedule(0);
+    LOG.info("Daemon listening on http://{}:{}, reshuffling every {}",
+        server.getAddress().getHostString(), server.getAddress().getPort(), interval);
+  }
+
+  // Blocks until the daemon is closed
+  public void await() throws InterruptedException {
+    closed.await();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    worker.shutdownNow();
+    closed.countDown();
+  }
+
+  private synchronized void schedule(long delayMillis) {
+    next = worker.schedule(this::runCycle, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void runCycle() {
+    int number;
+    synchronized (this) {
+      queued.set(false);
+      if (next != null) {
+        next.cancel(false); // A manual run replaces the pending scheduled one
+      }
+      running = true;
+      number = ++cycles;
+      lastStartedAt = Instant.now();
+    }
+
+    int trackCount = -1;
+    String error = null;
+    try {
+      trackCount = cycle.run(number);
+    } catch (Throwable e) {
+      // Errors too (an assertion, running out of memory): the daemon must keep its schedule
+      error = e.toString();
+      LOG.error("Shuffle cycle {} failed", number, e);
+    } finally {
+      synchronized (this) {
+        running = false;
+        lastFinishedAt = Instant.now();
+        lastError = error;
+        if (error == null) {
+          lastTrackCount = trackCount;
+        }
+        if (!worker.isShutdown()) {
+          schedule(interval.toMillis());
+        }
+      }
+    }
+  }
+
+  private void handleRun(HttpExchange exchange) throws IOException {
+    if (!exchange.getRequestMethod().equals("POST")) {
+      respond(exchange, 405, Map.of("error", "Use POST"));
+      return;
+    }
+    synchronized (this) {
+      if (running || !queued.compareAndSet(false, true)) {
+        respond(exchange, 409, Map.of("error", "A shuffle is already running or queued"));
+        return;
+      }
+      worker.execute(this::runCycle);
+    }
+    respond(exchange, 202, Map.of("status", "queued"));
+  }
+
+  private void handleStatus(HttpExchange exchange) throws IOException {
+    Map<String, Object> status = new LinkedHashMap<>();
+    synchronized (this) {
+      status.put("state", running ? "running" : "idle");
+      status.put("cycles", cycles);
+      status.put("lastStartedAt", String.valueOf(lastStartedAt));
+      status.put("lastFinishedAt", String.valueOf(lastFinishedAt));
+      status.put("lastTrackCount", lastTrackCount);
+      status.put("lastError", lastError);
+      if (next != null && !next.isDone()) {
+        status.put("nextRunAt",
+            String.valueOf(Instant.now().plusMillis(next.getDelay(TimeUnit.MILLISECONDS))));
+      }
+    }
+    respond(exchange, 200, status);
+  }
+
+  private static void respond(HttpExchange exchange, int status, Object body) throws IOException {
+    byte[] bytes = mapper.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package com.jled.playlistshuffle;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Record of a shuffle split across several playlists: the shard playlists in order and what was
+ * last written to each, with the snapshot_id it was left at. While a shard is still at that
+ * snapshot its recorded tracks are its contents, so it needs no read, and no write either unless
+ * its members change.
+ */
+public class ShuffleShards {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  public record Shard(String playlistId, String snapshotId, List<String> trackUris) {
+
+  }
+
+  // What a shard should hold after this run; unchanged shards keep their current order
+  public record Target(String playlistId, List<String> trackUris, boolean changed) {
+
+  }
+
+  private final Path path;
+  private List<Shard> shards;
+
+  private ShuffleShards(Path path, List<Shard> shards) {
+    this.path = path;
+    this.shards = shards;
+  }
+
+  public static ShuffleShards load(String filename) throws IOException {
+    Path path = Paths.get(filename);
+    if (!Files.exists(path)) {
+      return new ShuffleShards(path, List.of());
+    }
+    return new ShuffleShards(path, mapper.readValue(path.toFile(), new TypeReference<>() {}));
+  }
+
+  public boolean isEmpty() {
+    return shards.isEmpty();
+  }
+
+  public List<String> playlistIds() {
+    return shards.stream().map(Shard::playlistId).toList();
+  }
+
+  // The recorded tracks if the shard is still at the given snapshot, otherwise null
+  public List<String> get(String playlistId, String snapshotId) {
+    for (Shard shard : shards) {
+      if (shard.playlistId().equals(playlistId)) {
+        return snapshotId != null && snapshotId.equals(shard.snapshotId())
+            ? shard.trackUris() : null;
+      }
+    }
+    return null;
+  }
+
+  // Written to a temp file first so an interrupted save never leaves a truncated record behind
+  public void save(List<Shard> written) throws IOException {
+    shards = List.copyOf(written);
+    File tmp = new File(path + ".tmp");
+    mapper.writeValue(tmp, shards);
+    Files.move(tmp.toPath(), path, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Splits the shuffled pool across the shards. Tracks stay in the shard that already holds them,
+   * so membership is stable from run to run; tracks new to every shard fill the shards in order
+   * up to capacity, which keeps the changes in as few shards as possible. A shard that gained or
+   * lost members takes its new members in pool order, i.e. is reshuffled; any other shard keeps
+   * its current order and needs no write.
+   */
+  public static List<Target> assign(List<String> shuffled, List<String> playlistIds,
+      Map<String, List<String>> current, int capacity) {
+    Map<String, Integer> positions = new HashMap<>(shuffled.size() * 2);
+    for (int i = 0; i < shuffled.size(); i++) {
+      positions.putIfAbsent(shuffled.get(i), i);
+    }
+
+    int shardCount = playlistIds.size();
+    List<List<String>> members = new ArrayList<>(shardCount);
+    boolean[] changed = new boolean[shardCount];
+    Set<String> placed = new HashSet<>(positions.size() * 2);
+    for (int s = 0; s < shardCount; s++) {
+      List<String> contents = current.getOrDefault(playlistIds.get(s), List.of());
+      List<String> kept = new ArrayList<>(contents.size());
+      for (String uri : contents) {
+        if (kept.size() < capacity && positions.containsKey(uri) && placed.add(uri)) {
+          kept.add(uri);
+        }
+      }
+      changed[s] = kept.size() != contents.size();
+      members.add(kept);
+    }
+
+    int next = 0;
+    for (String uri : shuffled) {
+      if (!placed.add(uri)) {
+        continue;
+      }
+      while (members.get(next).size() >= capacity) {
+        if (++next == shardCount) {
+          throw new IllegalStateException(
+              shuffled.size() + " tracks don't fit in " + shardCount + " shards of " + capacity);
+        }
+      }
+      members.get(next).add(uri);
+      changed[next] = true;
+    }
+
+    List<Target> targets = new ArrayList<>(shardCount);
+    for (int s = 0; s < shardCount; s++) {
+      List<String> shard = members.get(s);
+      if (changed[s]) {
+        shard.sort(Comparator.comparingInt(positions::get));
+      }
+      targets.add(new Target(playlistIds.get(s), shard, changed[s]));
+    }
+    return targets;
+  }
+}
@@ -0,0 +1,24 @@
+package com.jled.playlistshuffle;
+
+import java.util.Random;
+
+/**
+ * Puts the collected tracks into their new playlist order, in place.
+ */
+@FunctionalInterface
+public interface ShuffleStrategy {
+
+  // Uniformly random order
+  ShuffleStrategy RANDOM = TrackIdSet::shuffle;
+
+  void shuffle(TrackIdSet tracks, Random random);
+
+  // "random" or "artist-spread"
+  static ShuffleStrategy named(String name, ArtistIndex artists) {
+    return switch (name) {
+      case "random" -> RANDOM;
+      case "artist-spread" -> new ArtistSpreadShuffle(artists);
+      default -> throw new IllegalArgumentException("Unknown shuffle strategy: " + name);
+    };
+  }
+}
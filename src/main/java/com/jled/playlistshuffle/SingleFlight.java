@@ -0,0 +1,97 @@
+package com.jled.playlistshuffle;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces identical calls: the first caller for a key runs the loader, concurrent callers wait
+ * for its result and later callers get the memoized value. Only the most recent maxRetained
+ * results are kept, so memory stays bounded however long the run; with 0 only calls in flight are
+ * shared. Failures are not memoized, so the next caller retries.
+ *
+ * <p>A loader that stops because its own caller was interrupted or cancelled (e.g. a sibling task
+ * failed, or a deadline passed) hasn't failed for anyone else, so a waiting caller takes over and
+ * loads in its place instead of inheriting the interruption.
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+  private final int maxRetained;
+  // Memoized results, oldest first
+  private final ArrayDeque<Map.Entry<K, CompletableFuture<V>>> retained = new ArrayDeque<>();
+
+  public SingleFlight(int maxRetained) {
+    this.maxRetained = maxRetained;
+  }
+
+  public V get(K key, Callable<V> loader) throws Exception {
+    while (true) {
+      CompletableFuture<V> created = new CompletableFuture<>();
+      CompletableFuture<V> existing = calls.putIfAbsent(key, created);
+      if (existing == null) {
+        return load(key, created, loader);
+      }
+
+      try {
+        return existing.get();
+      } catch (CancellationException e) {
+        // The loader was abandoned; this caller is still wanted, so try to lead the next attempt
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception cause) {
+          throw cause;
+        }
+        throw e;
+      }
+    }
+  }
+
+  public synchronized void clear() {
+    retained.forEach(entry -> calls.remove(entry.getKey(), entry.getValue()));
+    retained.clear();
+  }
+
+  private V load(K key, CompletableFuture<V> created, Callable<V> loader) throws Exception {
+    try {
+      V value = loader.call();
+      retain(key, created);
+      created.complete(value);
+      return value;
+    } catch (Exception | Error e) {
+      // Removed before waiters wake, so one of them can take the key over
+      calls.remove(key, created);
+      if (abandoned(e)) {
+        created.cancel(false);
+      } else {
+        created.completeExceptionally(e);
+      }
+      throw e;
+    }
+  }
+
+  private synchronized void retain(K key, CompletableFuture<V> created) {
+    retained.addLast(Map.entry(key, created));
+    while (retained.size() > maxRetained) {
+      Map.Entry<K, CompletableFuture<V>> oldest = retained.removeFirst();
+      calls.remove(oldest.getKey(), oldest.getValue());
+    }
+  }
+
+  private static boolean abandoned(Throwable failure) {
+    if (Thread.currentThread().isInterrupted()) {
+      return true;
+    }
+    for (Throwable e = failure; e != null; e = e.getCause()) {
+      if (e instanceof InterruptedException || e instanceof InterruptedIOException
+          || e instanceof CancellationException) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,95 @@
+package com.jled.playlistshuffle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs Spotify fan-out on virtual threads. Blocking HTTP calls are cheap to park there, so the
+ * only limit on parallelism is the in-flight semaphore rather than the number of cores.
+ */
+public class SpotifyExecutor implements AutoCloseable {
+
+  @FunctionalInterface
+  public interface Task<I, O> {
+
+    O apply(I input) throws Exception;
+  }
+
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final Semaphore inFlight;
+
+  public SpotifyExecutor(int maxInFlight) {
+    this.inFlight = new Semaphore(maxInFlight);
+  }
+
+  // Holds one in-flight permit for the duration of a single HTTP call
+  public <T> T withPermit(Callable<T> call) throws Exception {
+    inFlight.acquire();
+    try {
+      return call.call();
+    } finally {
+      inFlight.release();
+    }
+  }
+
+  // Applies task to every input concurrently and returns the results in input order. The first
+  // failure (or an interrupt of the caller) cancels all sibling tasks before it is rethrown.
+  public <I, O> List<O> map(List<I> inputs, Task<I, O> task) throws Exception {
+    return map(inputs, task, null);
+  }
+
+  // As above, but everything still running when the deadline passes is cancelled and the call
+  // fails with a TimeoutException
+  public <I, O> List<O> map(List<I> inputs, Task<I, O> task, Duration deadline)
+      throws Exception {
+    CompletionService<O> completion = new ExecutorCompletionService<>(executor);
+    List<Future<O>> futures = new ArrayList<>(inputs.size());
+    long deadlineNanos = deadline == null ? 0 : System.nanoTime() + deadline.toNanos();
+    try {
+      for (I input : inputs) {
+        futures.add(completion.submit(() -> task.apply(input)));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        if (deadline == null) {
+          completion.take().get();
+          continue;
+        }
+        Future<O> done = completion.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (done == null) {
+          throw new TimeoutException("Deadline of " + deadline + " exceeded");
+        }
+        done.get();
+      }
+      List<O> results = new ArrayList<>(futures.size());
+      for (Future<O> future : futures) {
+        results.add(future.resultNow());
+      }
+      return results;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw e;
+    } finally {
+      for (Future<O> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
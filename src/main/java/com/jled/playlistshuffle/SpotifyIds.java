@@ -0,0 +1,76 @@
+package com.jled.playlistshuffle;
+
+/**
+ * Converts Spotify's 22 character base62 ids to and from the 128-bit value they encode.
+ */
+public final class SpotifyIds {
+
+  public static final int ID_LENGTH = 22;
+
+  private static final String ALPHABET =
+      "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  private static final long LIMB_MASK = 0xFFFFFFFFL;
+
+  private SpotifyIds() {
+  }
+
+  // Decodes the id starting at offset into out[0] (high bits) and out[1] (low bits). Returns false
+  // if the text is not a well-formed id that fits into 128 bits.
+  public static boolean decode(String text, int offset, long[] out) {
+    if (text.length() - offset != ID_LENGTH) {
+      return false;
+    }
+    long hi = 0;
+    long lo = 0;
+    for (int i = offset; i < text.length(); i++) {
+      int digit = digit(text.charAt(i));
+      if (digit < 0 || Math.unsignedMultiplyHigh(hi, 62) != 0) {
+        return false;
+      }
+      long loTimes = lo * 62;
+      long carry = Math.unsignedMultiplyHigh(lo, 62);
+      long newLo = loTimes + digit;
+      if (Long.compareUnsigned(newLo, loTimes) < 0) {
+        carry++;
+      }
+      long hiTimes = hi * 62;
+      long newHi = hiTimes + carry;
+      if (Long.compareUnsigned(newHi, hiTimes) < 0) {
+        return false;
+      }
+      hi = newHi;
+      lo = newLo;
+    }
+    out[0] = hi;
+    out[1] = lo;
+    return true;
+  }
+
+  public static String encode(long hi, long lo) {
+    char[] out = new char[ID_LENGTH];
+    long[] limbs = {hi >>> 32, hi & LIMB_MASK, lo >>> 32, lo & LIMB_MASK};
+    for (int i = ID_LENGTH - 1; i >= 0; i--) {
+      long remainder = 0;
+      for (int j = 0; j < limbs.length; j++) {
+        long current = (remainder << 32) | limbs[j];
+        limbs[j] = current / 62;
+        remainder = current % 62;
+      }
+      out[i] = ALPHABET.charAt((int) remainder);
+    }
+    return new String(out);
+  }
+
+  private static int digit(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'a' && c <= 'z') {
+      return c - 'a' + 10;
+    }
+    if (c >= 'A' && c <= 'Z') {
+      return c - 'A' + 36;
+    }
+    return -1;
+  }
+}
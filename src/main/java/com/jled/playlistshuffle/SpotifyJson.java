@@ -0,0 +1,319 @@
+package com.jled.playlistshuffle;
+
+import com.google.gson.JsonArray;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming readers for the Spotify responses the shuffler consumes. Each one walks the JSON once,
+ * keeps the handful of fields it needs and skips everything else, so no model objects (images,
+ * markets, full artist objects) are ever built. The URI arrays sent with playlist writes are built
+ * here too.
+ */
+public final class SpotifyJson {
+
+  // Stands in for a playlist item without a track (removed or unavailable), so that positions in
+  // a parsed playlist match the playlist's own. Filtered out before tracks reach the pool.
+  public static final String UNAVAILABLE = "";
+
+  @FunctionalInterface
+  public interface Reader<T> {
+
+    T read(JsonReader in) throws IOException;
+  }
+
+  // One page of an offset- or cursor-paged collection
+  public record Page<T>(List<T> items, int total, String next, String after) {
+
+  }
+
+  public record Resource(String id, String name) {
+
+  }
+
+  public record PlaylistSummary(String id, String name, String snapshotId, int total) {
+
+  }
+
+  public record PlaylistHeader(String snapshotId, Page<String> tracks) {
+
+  }
+
+  public record AlbumTracks(String id, String name, String artistId, String artistName,
+      Page<String> trackIds) {
+
+  }
+
+  @FunctionalInterface
+  public interface PopularityVisitor {
+
+    void visit(String trackId, int popularity);
+  }
+
+  // Receives the first artist of each track item that has one
+  @FunctionalInterface
+  public interface ArtistVisitor {
+
+    ArtistVisitor NONE = (trackUri, artistId) -> {
+    };
+
+    void visit(String trackUri, String artistId);
+  }
+
+  private SpotifyJson() {
+  }
+
+  // {snapshot_id, tracks: {items: [{track: {uri}}], total, next}}
+  public static PlaylistHeader playlistHeader(String json) throws IOException {
+    return playlistHeader(json, ArtistVisitor.NONE);
+  }
+
+  // Same, with track artists ({track: {uri, artists: [{id}]}}) handed to the visitor
+  public static PlaylistHeader playlistHeader(String json, ArtistVisitor artists)
+      throws IOException {
+    try (JsonReader in = new JsonReader(new StringReader(json))) {
+      String snapshotId = null;
+      Page<String> tracks = emptyPage();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "snapshot_id" -> snapshotId = nullableString(in);
+          case "tracks" -> tracks = page(in, item -> itemTrackUri(item, artists));
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new PlaylistHeader(snapshotId, tracks);
+    }
+  }
+
+  // Playlist items and saved tracks: {items: [{track: {uri}}], total, next}. Items without a track
+  // are kept as UNAVAILABLE.
+  public static Page<String> trackUriPage(String json) throws IOException {
+    return trackUriPage(json, ArtistVisitor.NONE);
+  }
+
+  public static Page<String> trackUriPage(String json, ArtistVisitor artists) throws IOException {
+    return parse(json, in -> page(in, item -> itemTrackUri(item, artists)));
+  }
+
+  // Artist albums and album tracks: {items: [{id}], total, next}
+  public static Page<String> idPage(String json) throws IOException {
+    return parse(json, in -> page(in, item -> field(item, "id", JsonReader::nextString)));
+  }
+
+  public static Page<PlaylistSummary> playlistSummaryPage(String json) throws IOException {
+    return parse(json, in -> page(in, SpotifyJson::playlistSummary));
+  }
+
+  public static Page<AlbumTracks> savedAlbumPage(String json) throws IOException {
+    return parse(json, in -> page(in, item -> field(item, "album", SpotifyJson::albumTracks)));
+  }
+
+  // {albums: [album | null]}
+  public static List<AlbumTracks> severalAlbums(String json) throws IOException {
+    return parse(json, in -> field(in, "albums", albums -> array(albums, SpotifyJson::albumTracks)));
+  }
+
+  // {tracks: [{id, popularity} | null]}, handed to the visitor as they are read
+  public static void severalTracks(String json, PopularityVisitor visitor) throws IOException {
+    parse(json, in -> field(in, "tracks", tracks -> array(tracks, track -> {
+      visitTrackPopularity(track, visitor);
+      return null;
+    })));
+  }
+
+  // {artists: {items: [{id, name}], next, cursors: {after}}}
+  public static Page<Resource> followedArtistsPage(String json) throws IOException {
+    return parse(json, in -> field(in, "artists", artists -> page(artists, SpotifyJson::resource)));
+  }
+
+  // Request body for playlist writes: a URI array sized up front, no reflection-based tree mapping
+  public static JsonArray toJsonArray(List<String> uris) {
+    JsonArray array = new JsonArray(uris.size());
+    for (String uri : uris) {
+      array.add(uri);
+    }
+    return array;
+  }
+
+  private static <T> T parse(String json, Reader<T> reader) throws IOException {
+    try (JsonReader in = new JsonReader(new StringReader(json))) {
+      return reader.read(in);
+    }
+  }
+
+  private static <T> Page<T> page(JsonReader in, Reader<T> itemReader) throws IOException {
+    List<T> items = List.of();
+    int total = 0;
+    String next = null;
+    String after = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "items" -> items = array(in, itemReader);
+        case "total" -> total = in.nextInt();
+        case "next" -> next = nullableString(in);
+        case "cursors" -> after = field(in, "after", SpotifyJson::nullableString);
+        default -> in.skipValue();
+      }
+    }
+    in.endObject();
+    return new Page<>(items, total, next, after);
+  }
+
+  // Null elements and elements the reader maps to null (e.g. missing albums) are dropped
+  private static <T> List<T> array(JsonReader in, Reader<T> itemReader) throws IOException {
+    List<T> items = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      T item = itemReader.read(in);
+      if (item != null) {
+        items.add(item);
+      }
+    }
+    in.endArray();
+    return items;
+  }
+
+  // Reads a single field of an object, or null if it is missing or null
+  private static <T> T field(JsonReader in, String name, Reader<T> valueReader)
+      throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    T value = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      if (in.nextName().equals(name) && in.peek() != JsonToken.NULL) {
+        value = valueReader.read(in);
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    return value;
+  }
+
+  private static String itemTrackUri(JsonReader in, ArtistVisitor artists) throws IOException {
+    String itemUri = field(in, "track", track -> {
+      String uri = null;
+      String artistId = null;
+      track.beginObject();
+      while (track.hasNext()) {
+        switch (track.nextName()) {
+          case "uri" -> uri = nullableString(track);
+          case "artists" -> artistId = firstArtistId(track);
+          default -> track.skipValue();
+        }
+      }
+      track.endObject();
+      if (uri != null && artistId != null) {
+        artists.visit(uri, artistId);
+      }
+      return uri;
+    });
+    return itemUri == null ? UNAVAILABLE : itemUri;
+  }
+
+  private static String firstArtistId(JsonReader in) throws IOException {
+    List<String> ids = array(in, artist -> field(artist, "id", SpotifyJson::nullableString));
+    return ids.isEmpty() ? null : ids.get(0);
+  }
+
+  private static String nullableString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+
+  private static Resource resource(JsonReader in) throws IOException {
+    String id = null;
+    String name = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id" -> id = nullableString(in);
+        case "name" -> name = nullableString(in);
+        default -> in.skipValue();
+      }
+    }
+    in.endObject();
+    return new Resource(id, name);
+  }
+
+  private static PlaylistSummary playlistSummary(JsonReader in) throws IOException {
+    String id = null;
+    String name = null;
+    String snapshotId = null;
+    Integer total = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id" -> id = nullableString(in);
+        case "name" -> name = nullableString(in);
+        case "snapshot_id" -> snapshotId = nullableString(in);
+        case "tracks" -> total = field(in, "total", JsonReader::nextInt);
+        default -> in.skipValue();
+      }
+    }
+    in.endObject();
+    return new PlaylistSummary(id, name, snapshotId, total == null ? 0 : total);
+  }
+
+  private static AlbumTracks albumTracks(JsonReader in) throws IOException {
+    String id = null;
+    String name = null;
+    Resource artist = null;
+    Page<String> trackIds = emptyPage();
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id" -> id = nullableString(in);
+        case "name" -> name = nullableString(in);
+        case "artists" -> {
+          List<Resource> artists = array(in, SpotifyJson::resource);
+          artist = artists.isEmpty() ? null : artists.get(0);
+        }
+        case "tracks" -> trackIds = page(in, item -> field(item, "id", JsonReader::nextString));
+        default -> in.skipValue();
+      }
+    }
+    in.endObject();
+    return new AlbumTracks(id, name, artist == null ? null : artist.id(),
+        artist == null ? null : artist.name(), trackIds);
+  }
+
+  private static void visitTrackPopularity(JsonReader in, PopularityVisitor visitor)
+      throws IOException {
+    String id = null;
+    int popularity = 0;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id" -> id = nullableString(in);
+        case "popularity" -> popularity = in.nextInt();
+        default -> in.skipValue();
+      }
+    }
+    in.endObject();
+    if (id != null) {
+      visitor.visit(id, popularity);
+    }
+  }
+
+  private static <T> Page<T> emptyPage() {
+    return new Page<>(List.of(), 0, null, null);
+  }
+}
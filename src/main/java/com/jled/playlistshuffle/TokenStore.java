@@ -0,0 +1,158 @@
+package com.jled.playlistshuffle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * OAuth tokens persisted together with their expiry. The access token is refreshed on a background
+ * thread shortly before it expires, and a request that is still rejected with 401 triggers one
+ * refresh that every other rejected request waits for instead of refreshing again.
+ *
+ * <p>File format: access token, refresh token and expires_at in epoch seconds, one per line. Files
+ * from before expires_at was stored have two lines and count as expired, as does an unreadable
+ * expires_at.
+ */
+public class TokenStore implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TokenStore.class);
+  private static final Duration REFRESH_MARGIN = Duration.ofMinutes(5);
+  private static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+
+  public record Tokens(String accessToken, String refreshToken, Instant expiresAt) {
+
+  }
+
+  @FunctionalInterface
+  public interface Refresher {
+
+    // The refresh token in the result may be null when Spotify keeps the old one
+    Tokens refresh(String refreshToken) throws Exception;
+  }
+
+  private final Path path;
+  private final Refresher refresher;
+  private final Consumer<Tokens> onUpdate;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+      r -> {
+        Thread thread = new Thread(r, "token-refresh");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private Tokens tokens;
+  private ScheduledFuture<?> scheduledRefresh;
+
+  public TokenStore(Path path, Refresher refresher, Consumer<Tokens> onUpdate) {
+    this.path = path;
+    this.refresher = refresher;
+    this.onUpdate = onUpdate;
+  }
+
+  // Returns false if there are no stored tokens and the authorization flow has to run
+  public synchronized boolean load() throws IOException {
+    if (!Files.exists(path)) {
+      return false;
+    }
+    List<String> lines = Files.readAllLines(path);
+    if (lines.size() < 2) {
+      return false;
+    }
+    tokens = new Tokens(lines.get(0), lines.get(1),
+        lines.size() > 2 ? parseExpiry(lines.get(2)) : Instant.EPOCH);
+    onUpdate.accept(tokens);
+    return true;
+  }
+
+  // A blank or garbled expiry counts as expired, so the token is refreshed instead of failing
+  private Instant parseExpiry(String line) {
+    try {
+      return Instant.ofEpochSecond(Long.parseLong(line.trim()));
+    } catch (NumberFormatException e) {
+      LOG.warn("Unreadable token expiry in {}, treating the access token as expired", path);
+      return Instant.EPOCH;
+    }
+  }
+
+  // Refreshes right away when the stored token is (nearly) expired, otherwise schedules it
+  public synchronized void start() throws Exception {
+    if (isExpiring()) {
+      refresh();
+    } else {
+      scheduleRefresh();
+    }
+  }
+
+  public synchronized void update(Tokens updated) throws IOException {
+    String refreshToken = updated.refreshToken() != null ? updated.refreshToken()
+        : tokens != null ? tokens.refreshToken() : null;
+    tokens = new Tokens(updated.accessToken(), refreshToken, updated.expiresAt());
+    save();
+    onUpdate.accept(tokens);
+    scheduleRefresh();
+  }
+
+  public synchronized void refresh() throws Exception {
+    update(refresher.refresh(tokens.refreshToken()));
+    LOG.info("Access token refreshed, valid until {}", tokens.expiresAt());
+  }
+
+  // Called after a 401 with the access token the request carried. Only the first caller for a
+  // token refreshes; the rest block on the lock meanwhile and then find it already replaced.
+  public synchronized String refreshAfterUnauthorized(String rejectedToken) throws Exception {
+    if (rejectedToken.equals(tokens.accessToken())) {
+      LOG.info("Access token rejected, refreshing");
+      refresh();
+    }
+    return tokens.accessToken();
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  private boolean isExpiring() {
+    return Instant.now().plus(REFRESH_MARGIN).isAfter(tokens.expiresAt());
+  }
+
+  private void scheduleRefresh() {
+    if (scheduledRefresh != null) {
+      scheduledRefresh.cancel(false);
+    }
+    long delayMillis = Math.max(0,
+        Duration.between(Instant.now().plus(REFRESH_MARGIN), tokens.expiresAt()).toMillis());
+    scheduledRefresh = scheduler.schedule(this::refreshInBackground, delayMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void refreshInBackground() {
+    try {
+      refresh();
+    } catch (Exception e) {
+      LOG.warn("Background token refresh failed, retrying in {}: {}", RETRY_DELAY,
+          e.getMessage());
+      scheduledRefresh = scheduler.schedule(this::refreshInBackground, RETRY_DELAY.toMillis(),
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // Temp file + atomic rename, so a crash never leaves a half-written token file behind
+  private void save() throws IOException {
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    Files.write(tmp, List.of(tokens.accessToken(), tokens.refreshToken(),
+        String.valueOf(tokens.expiresAt().getEpochSecond())));
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,103 @@
+package com.jled.playlistshuffle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the K most popular tracks seen so far in a bounded min-heap of primitive
+ * (popularity, 128-bit id) entries, so an artist's whole discography never has to be held at once.
+ */
+public class TopK {
+
+  private static final String TRACK_PREFIX = "spotify:track:";
+
+  private final int k;
+  private final int[] popularity;
+  private final long[] his;
+  private final long[] los;
+  private int size;
+
+  private final long[] scratch = new long[2];
+
+  public TopK(int k) {
+    this.k = k;
+    this.popularity = new int[k];
+    this.his = new long[k];
+    this.los = new long[k];
+  }
+
+  public synchronized void offer(String trackId, int trackPopularity) {
+    if (k == 0 || size == k && trackPopularity <= popularity[0]) {
+      return;
+    }
+    if (!SpotifyIds.decode(trackId, 0, scratch)) {
+      return;
+    }
+    if (size < k) {
+      set(size, trackPopularity, scratch[0], scratch[1]);
+      siftUp(size++);
+    } else {
+      set(0, trackPopularity, scratch[0], scratch[1]);
+      siftDown(0);
+    }
+  }
+
+  // Track URIs, most popular first
+  public synchronized List<String> toUris() {
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Integer.compare(popularity[b], popularity[a]));
+    List<String> uris = new ArrayList<>(size);
+    for (int i : order) {
+      uris.add(TRACK_PREFIX + SpotifyIds.encode(his[i], los[i]));
+    }
+    return uris;
+  }
+
+  private void siftUp(int i) {
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (popularity[parent] <= popularity[i]) {
+        return;
+      }
+      swap(i, parent);
+      i = parent;
+    }
+  }
+
+  private void siftDown(int i) {
+    while (true) {
+      int smallest = i;
+      int left = 2 * i + 1;
+      int right = left + 1;
+      if (left < size && popularity[left] < popularity[smallest]) {
+        smallest = left;
+      }
+      if (right < size && popularity[right] < popularity[smallest]) {
+        smallest = right;
+      }
+      if (smallest == i) {
+        return;
+      }
+      swap(i, smallest);
+      i = smallest;
+    }
+  }
+
+  private void set(int i, int trackPopularity, long hi, long lo) {
+    popularity[i] = trackPopularity;
+    his[i] = hi;
+    los[i] = lo;
+  }
+
+  private void swap(int a, int b) {
+    int p = popularity[a];
+    long hi = his[a];
+    long lo = los[a];
+    set(a, popularity[b], his[b], los[b]);
+    set(b, p, hi, lo);
+  }
+}
@@ -0,0 +1,251 @@
+package com.jled.playlistshuffle;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * Insertion-ordered set of playlist item URIs stored as decoded 128-bit ids in primitive arrays,
+ * deduplicated through an open-addressing index. Track and episode URIs cost 17 bytes each instead
+ * of a boxed String in a HashSet; anything that isn't a base62 id (local files) is kept as text.
+ * All public methods are synchronized so concurrent sources can share one set as their dedup sink.
+ */
+public class TrackIdSet {
+
+  private static final String TRACK_PREFIX = "spotify:track:";
+  private static final String EPISODE_PREFIX = "spotify:episode:";
+
+  private static final byte TRACK = 0;
+  private static final byte EPISODE = 1;
+  private static final byte OTHER = 2;
+
+  private long[] his;
+  private long[] los;
+  private byte[] kinds;
+  private int size;
+
+  // Open-addressing index into the dense arrays, storing position + 1 so that 0 means empty
+  private int[] slots;
+
+  private final List<String> others = new ArrayList<>();
+  private final Map<String, Integer> otherIndex = new HashMap<>();
+
+  private final long[] scratch = new long[2];
+
+  public TrackIdSet() {
+    this(1024);
+  }
+
+  public TrackIdSet(int expectedSize) {
+    int capacity = Math.max(16, expectedSize);
+    his = new long[capacity];
+    los = new long[capacity];
+    kinds = new byte[capacity];
+    slots = new int[tableSizeFor(capacity)];
+  }
+
+  public synchronized boolean add(String uri) {
+    byte kind;
+    long hi;
+    long lo;
+    if (uri.startsWith(TRACK_PREFIX) && SpotifyIds.decode(uri, TRACK_PREFIX.length(), scratch)) {
+      kind = TRACK;
+      hi = scratch[0];
+      lo = scratch[1];
+    } else if (uri.startsWith(EPISODE_PREFIX)
+        && SpotifyIds.decode(uri, EPISODE_PREFIX.length(), scratch)) {
+      kind = EPISODE;
+      hi = scratch[0];
+      lo = scratch[1];
+    } else {
+      if (otherIndex.containsKey(uri)) {
+        return false;
+      }
+      otherIndex.put(uri, others.size());
+      others.add(uri);
+      kind = OTHER;
+      hi = 0;
+      lo = others.size() - 1;
+    }
+    return add(kind, hi, lo);
+  }
+
+  public synchronized void addAll(Collection<String> uris) {
+    for (String uri : uris) {
+      add(uri);
+    }
+  }
+
+  public synchronized boolean contains(String uri) {
+    if (uri.startsWith(TRACK_PREFIX) && SpotifyIds.decode(uri, TRACK_PREFIX.length(), scratch)) {
+      return find(TRACK, scratch[0], scratch[1]) >= 0;
+    }
+    if (uri.startsWith(EPISODE_PREFIX)
+        && SpotifyIds.decode(uri, EPISODE_PREFIX.length(), scratch)) {
+      return find(EPISODE, scratch[0], scratch[1]) >= 0;
+    }
+    return otherIndex.containsKey(uri);
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public synchronized void clear() {
+    size = 0;
+    Arrays.fill(slots, 0);
+    others.clear();
+    otherIndex.clear();
+  }
+
+  public synchronized String get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return switch (kinds[index]) {
+      case TRACK -> TRACK_PREFIX + SpotifyIds.encode(his[index], los[index]);
+      case EPISODE -> EPISODE_PREFIX + SpotifyIds.encode(his[index], los[index]);
+      default -> others.get((int) los[index]);
+    };
+  }
+
+  // Raw access for serializers that want the decoded id instead of the URI
+  public synchronized boolean isTrack(int index) {
+    return kinds[index] == TRACK;
+  }
+
+  public synchronized long idHigh(int index) {
+    return his[index];
+  }
+
+  public synchronized long idLow(int index) {
+    return los[index];
+  }
+
+  // Fisher-Yates over the primitive arrays; the index is rebuilt afterwards since every position
+  // has moved
+  public synchronized void shuffle(Random random) {
+    for (int i = size - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      swap(i, j);
+    }
+    rehash(slots.length);
+  }
+
+  // Moves the entry at order[i] to position i, for strategies that compute the whole order at once
+  public synchronized void permute(int[] order) {
+    if (order.length != size) {
+      throw new IllegalArgumentException("Order has " + order.length + " entries, set has " + size);
+    }
+    long[] newHis = new long[his.length];
+    long[] newLos = new long[los.length];
+    byte[] newKinds = new byte[kinds.length];
+    for (int i = 0; i < size; i++) {
+      newHis[i] = his[order[i]];
+      newLos[i] = los[order[i]];
+      newKinds[i] = kinds[order[i]];
+    }
+    his = newHis;
+    los = newLos;
+    kinds = newKinds;
+    rehash(slots.length);
+  }
+
+  // Read-only view that decodes each URI on access, so callers don't need a String copy of the set
+  public List<String> asList() {
+    return new UriList();
+  }
+
+  private boolean add(byte kind, long hi, long lo) {
+    if (find(kind, hi, lo) >= 0) {
+      return false;
+    }
+    if (size == his.length) {
+      int capacity = his.length * 2;
+      his = Arrays.copyOf(his, capacity);
+      los = Arrays.copyOf(los, capacity);
+      kinds = Arrays.copyOf(kinds, capacity);
+    }
+    his[size] = hi;
+    los[size] = lo;
+    kinds[size] = kind;
+    size++;
+    if (size * 2 > slots.length) {
+      rehash(slots.length * 2);
+    } else {
+      insertSlot(size - 1);
+    }
+    return true;
+  }
+
+  private int find(byte kind, long hi, long lo) {
+    int mask = slots.length - 1;
+    for (int slot = hash(kind, hi, lo) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+      int index = slots[slot] - 1;
+      if (his[index] == hi && los[index] == lo && kinds[index] == kind) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private void insertSlot(int index) {
+    int mask = slots.length - 1;
+    int slot = hash(kinds[index], his[index], los[index]) & mask;
+    while (slots[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = index + 1;
+  }
+
+  private void rehash(int tableSize) {
+    slots = new int[tableSize];
+    for (int i = 0; i < size; i++) {
+      insertSlot(i);
+    }
+  }
+
+  private void swap(int i, int j) {
+    long hi = his[i];
+    his[i] = his[j];
+    his[j] = hi;
+    long lo = los[i];
+    los[i] = los[j];
+    los[j] = lo;
+    byte kind = kinds[i];
+    kinds[i] = kinds[j];
+    kinds[j] = kind;
+  }
+
+  private static int hash(byte kind, long hi, long lo) {
+    long h = hi * 0x9E3779B97F4A7C15L ^ lo ^ kind;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  private static int tableSizeFor(int capacity) {
+    return Integer.highestOneBit(capacity * 4 - 1);
+  }
+
+  private class UriList extends AbstractList<String> implements RandomAccess {
+
+    // Both lock the set itself, not this view
+    @Override
+    public String get(int index) {
+      return TrackIdSet.this.get(index);
+    }
+
+    @Override
+    public int size() {
+      return TrackIdSet.this.size();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package com.jled.playlistshuffle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary file holding the shuffled track list.
+ *
+ * <p>Layout: a header (magic, count, number of non-track entries, CRC32C of everything after the
+ * header), then one 16 byte record per entry holding the decoded 128-bit track id. Entries that are
+ * not tracks (episodes, local files) keep an empty record and are listed as index + URI after the
+ * records. Reading maps the file and decodes entries on access, so slicing a batch only touches
+ * that batch's records.
+ */
+public final class TrackListFile {
+
+  private static final int MAGIC = 0x53485546; // "SHUF"
+  private static final int HEADER_BYTES = 20;
+  private static final int RECORD_BYTES = 16;
+  private static final String TRACK_PREFIX = "spotify:track:";
+
+  private TrackListFile() {
+  }
+
+  public static void write(Path path, TrackIdSet tracks) throws IOException {
+    int count = tracks.size();
+    ByteBuffer records = ByteBuffer.allocateDirect(count * RECORD_BYTES);
+    Map<Integer, String> others = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      if (tracks.isTrack(i)) {
+        records.putLong(tracks.idHigh(i)).putLong(tracks.idLow(i));
+      } else {
+        records.putLong(0).putLong(0);
+        others.put(i, tracks.get(i));
+      }
+    }
+    records.flip();
+
+    int othersBytes = 0;
+    for (String uri : others.values()) {
+      othersBytes += 8 + uri.getBytes(StandardCharsets.UTF_8).length;
+    }
+    ByteBuffer trailer = ByteBuffer.allocate(othersBytes);
+    others.forEach((index, uri) -> {
+      byte[] bytes = uri.getBytes(StandardCharsets.UTF_8);
+      trailer.putInt(index).putInt(bytes.length).put(bytes);
+    });
+    trailer.flip();
+
+    CRC32C crc = new CRC32C();
+    crc.update(records.duplicate());
+    crc.update(trailer.duplicate());
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+        .putInt(MAGIC).putInt(count).putInt(others.size()).putLong(crc.getValue()).flip();
+
+    // Written next to the target and renamed so a reader never maps a half-written file
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer[] buffers = {header, records, trailer};
+      while (header.hasRemaining() || records.hasRemaining() || trailer.hasRemaining()) {
+        channel.write(buffers);
+      }
+      channel.force(false);
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // Returns an empty list if the file doesn't exist; fails if it is corrupt
+  public static List<String> read(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return Collections.emptyList();
+    }
+    MappedByteBuffer mapped;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (mapped.limit() < HEADER_BYTES || mapped.getInt(0) != MAGIC) {
+      throw new IOException("Not a track list file: " + path);
+    }
+    int count = mapped.getInt(4);
+    int othersCount = mapped.getInt(8);
+    long checksum = mapped.getLong(12);
+
+    CRC32C crc = new CRC32C();
+    crc.update(mapped.slice(HEADER_BYTES, mapped.limit() - HEADER_BYTES));
+    if (crc.getValue() != checksum || mapped.limit() < HEADER_BYTES + count * RECORD_BYTES) {
+      throw new IOException("Checksum mismatch in track list file: " + path);
+    }
+
+    Map<Integer, String> others = new HashMap<>();
+    int position = HEADER_BYTES + count * RECORD_BYTES;
+    for (int i = 0; i < othersCount; i++) {
+      int index = mapped.getInt(position);
+      byte[] bytes = new byte[mapped.getInt(position + 4)];
+      mapped.get(position + 8, bytes);
+      others.put(index, new String(bytes, StandardCharsets.UTF_8));
+      position += 8 + bytes.length;
+    }
+    return new MappedList(mapped, count, others);
+  }
+
+  private static class MappedList extends AbstractList<String> implements RandomAccess {
+
+    private final ByteBuffer records;
+    private final int count;
+    private final Map<Integer, String> others;
+
+    private MappedList(ByteBuffer records, int count, Map<Integer, String> others) {
+      this.records = records;
+      this.count = count;
+      this.others = others;
+    }
+
+    @Override
+    public String get(int index) {
+      if (index < 0 || index >= count) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      String other = others.get(index);
+      if (other != null) {
+        return other;
+      }
+      int offset = HEADER_BYTES + index * RECORD_BYTES;
+      return TRACK_PREFIX + SpotifyIds.encode(records.getLong(offset), records.getLong(offset + 8));
+    }
+
+    @Override
+    public int size() {
+      return count;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.jled.playlistshuffle;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only record of the batches committed while writing the shuffle list to a playlist.
+ *
+ * <p>The first line describes the write (playlist, offset of the first appended item, list size);
+ * every following line is a committed batch index and the snapshot_id Spotify returned for it.
+ * A torn last line from a crash is ignored on read.
+ */
+public class WriteJournal {
+
+  private final Path path;
+  private final String playlistId;
+  private final int offset;
+  private final int items;
+  private final Set<Integer> committed = new HashSet<>();
+  private String lastSnapshotId;
+
+  private WriteJournal(Path path, String playlistId, int offset, int items) {
+    this.path = path;
+    this.playlistId = playlistId;
+    this.offset = offset;
+    this.items = items;
+  }
+
+  // Starts a new journal, discarding any previous one
+  public static WriteJournal begin(String filename, String playlistId, int offset, int items)
+      throws IOException {
+    WriteJournal journal = new WriteJournal(Paths.get(filename), playlistId, offset, items);
+    Files.writeString(journal.path, playlistId + " " + offset + " " + items + "\n",
+        StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+    return journal;
+  }
+
+  // Returns the journal of an unfinished write, or null if the last write completed
+  public static WriteJournal resume(String filename) throws IOException {
+    Path path = Paths.get(filename);
+    if (!Files.exists(path)) {
+      return null;
+    }
+    List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    if (lines.isEmpty()) {
+      return null;
+    }
+    String[] header = lines.get(0).split(" ");
+    if (header.length != 3) {
+      return null;
+    }
+    WriteJournal journal = new WriteJournal(path, header[0], Integer.parseInt(header[1]),
+        Integer.parseInt(header[2]));
+    for (String line : lines.subList(1, lines.size())) {
+      String[] entry = line.split(" ");
+      if (entry.length == 2) {
+        journal.committed.add(Integer.parseInt(entry[0]));
+        journal.lastSnapshotId = entry[1];
+      }
+    }
+    return journal;
+  }
+
+  // Synced before returning so a batch is never reported as written without being on disk
+  public synchronized void commit(int batch, String snapshotId) throws IOException {
+    Files.writeString(path, batch + " " + snapshotId + "\n", StandardCharsets.UTF_8,
+        StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+    committed.add(batch);
+    lastSnapshotId = snapshotId;
+  }
+
+  public synchronized boolean isCommitted(int batch) {
+    return committed.contains(batch);
+  }
+
+  public boolean matches(String playlistId, int items) {
+    return this.playlistId.equals(playlistId) && this.items == items;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public synchronized String getLastSnapshotId() {
+    return lastSnapshotId;
+  }
+
+  public void complete() throws IOException {
+    Files.deleteIfExists(path);
+  }
+
+  // Drops the journal of an unfinished write that no longer needs resuming
+  public static void discard(String filename) throws IOException {
+    Files.deleteIfExists(Paths.get(filename));
+  }
+}